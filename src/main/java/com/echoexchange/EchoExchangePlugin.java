@@ -2,10 +2,17 @@ package com.echoexchange;
 
 import com.echoexchange.block.ExchangeMachineBlockInteraction;
 import com.echoexchange.block.ExchangeMachineDestroySystem;
+import com.echoexchange.command.EchoValueCommand;
 import com.echoexchange.config.EchoExchangeConfig;
 import com.echoexchange.echo.EchoValueCalculator;
 import com.echoexchange.item.ExchangeTabletPageSupplier;
+import com.echoexchange.item.ItemSearchIndex;
 import com.echoexchange.storage.ExchangeMachineManager;
+import com.hypixel.hytale.assetstore.event.LoadedAssetsEvent;
+import com.hypixel.hytale.server.core.asset.type.item.config.CraftingRecipe;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.modules.interaction.interaction.config.server.OpenCustomUIInteraction;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
@@ -33,6 +40,13 @@ public class EchoExchangePlugin extends JavaPlugin {
     public EchoExchangeConfig getModConfig() {
         return config.get();
     }
+    
+    /**
+     * Writes the config back to disk after it was changed at runtime.
+     */
+    public void saveModConfig() {
+        config.save();
+    }
 
     @Override
     protected void setup() {
@@ -42,11 +56,29 @@ public class EchoExchangePlugin extends JavaPlugin {
         ExchangeMachineBlockInteraction.register(this);
         OpenCustomUIInteraction.PAGE_CODEC.register("ExchangeTablet", ExchangeTabletPageSupplier.class, ExchangeTabletPageSupplier.CODEC);
         getEntityStoreRegistry().registerSystem(new ExchangeMachineDestroySystem());
+        getCommandRegistry().registerCommand(new EchoValueCommand());
+        getEventRegistry().register(PlayerConnectEvent.class,
+            event -> ExchangeMachineManager.getInstance().onPlayerConnect(event.getPlayerRef().getUuid()));
+        getEventRegistry().register(PlayerDisconnectEvent.class,
+            event -> ExchangeMachineManager.getInstance().onPlayerDisconnect(event.getPlayerRef().getUuid()));
+        // Reloaded items and recipes only revalue what they affect
+        getEventRegistry().register(LoadedAssetsEvent.class, Item.class, event -> {
+            EchoValueCalculator.getInstance().refreshValues();
+            ItemSearchIndex.getInstance().clear();
+        });
+        getEventRegistry().register(LoadedAssetsEvent.class, CraftingRecipe.class,
+            event -> EchoValueCalculator.getInstance().refreshValues());
 
         getLogger().at(Level.INFO).log("Echo Exchange Plugin initialized!");
         getLogger().at(Level.INFO).log("Base Echo storage: %d", getModConfig().getBaseEchoStorage());
         getLogger().at(Level.INFO).log("Capacity multiplier: %.2f", getModConfig().getCapacityMultiplier());
         
-        EchoValueCalculator.getInstance().precalculateAll();
+        EchoValueCalculator.getInstance().startWarmUp();
+        ItemSearchIndex.getInstance().warm(null);
+    }
+
+    @Override
+    protected void shutdown() {
+        ExchangeMachineManager.getInstance().shutdown();
     }
 }
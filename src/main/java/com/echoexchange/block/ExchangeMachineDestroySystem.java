@@ -59,7 +59,12 @@ public class ExchangeMachineDestroySystem extends EntityEventSystem<EntityStore,
         Vector3i blockPos = event.getTargetBlock();
         
         ExchangeMachineManager.MachineData machineData = 
-                ExchangeMachineManager.getInstance().getMachineData(worldName, blockPos);
+                ExchangeMachineManager.getInstance().findMachineData(worldName, blockPos);
+        if (machineData == null) {
+            // Machine was never opened, so there is nothing to drop or forget
+            return;
+        }
+        
         List<ItemStack> itemsToDrop = machineData.getItemsToDrop();
         
         long storedEchoes = machineData.getStoredEchoes();
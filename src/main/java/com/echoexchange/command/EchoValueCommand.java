@@ -0,0 +1,51 @@
+package com.echoexchange.command;
+
+import com.echoexchange.echo.EchoValueCalculator;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.arguments.system.OptionalArg;
+import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
+import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@code /echovalue <item> [value]} sets an item's Echo value override, or removes it when no
+ * value is given. The config is saved and only the item and what is crafted from it are revalued.
+ */
+public class EchoValueCommand extends CommandBase {
+
+    private final RequiredArg<String> itemArg;
+    private final OptionalArg<Integer> valueArg;
+
+    public EchoValueCommand() {
+        super("echovalue", "Sets or clears an item's Echo value override");
+        this.itemArg = withRequiredArg("item", "Item ID", ArgTypes.STRING);
+        this.valueArg = withOptionalArg("value", "Echo value; leave out to clear the override", ArgTypes.INTEGER);
+    }
+
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        String itemId = context.get(itemArg);
+        if (Item.getAssetMap().getAsset(itemId) == null) {
+            context.sendMessage(Message.raw("Unknown item: " + itemId));
+            return;
+        }
+
+        Integer value = context.provided(valueArg) ? context.get(valueArg) : null;
+        if (value != null && value < 1) {
+            context.sendMessage(Message.raw("Echo values must be at least 1"));
+            return;
+        }
+
+        EchoValueCalculator.getInstance().setEchoValueOverride(itemId, value);
+        if (value != null) {
+            context.sendMessage(Message.raw(itemId + " is now worth " + value + " Echoes"));
+        } else {
+            context.sendMessage(Message.raw("Cleared the Echo value override for " + itemId + ", now worth "
+                + EchoValueCalculator.getInstance().getEchoValue(itemId) + " Echoes"));
+        }
+    }
+}
@@ -7,9 +7,9 @@ import com.hypixel.hytale.codec.codecs.array.ArrayCodec;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EchoExchangeConfig {
 
@@ -21,6 +21,16 @@ public class EchoExchangeConfig {
             .addField(new KeyedCodec<>("CapacityMultiplier", Codec.DOUBLE),
                     (config, value) -> config.capacityMultiplier = value,
                     config -> config.capacityMultiplier)
+            .addField(new KeyedCodec<>("EchoValueOverrides", new ArrayCodec<>(EchoValueOverride.CODEC, EchoValueOverride[]::new)),
+                    (config, value) -> {
+                        config.echoValueOverrides.clear();
+                        for (EchoValueOverride override : value) {
+                            config.echoValueOverrides.put(override.itemId, override.value);
+                        }
+                    },
+                    config -> config.echoValueOverrides.entrySet().stream()
+                            .map(entry -> new EchoValueOverride(entry.getKey(), entry.getValue()))
+                            .toArray(EchoValueOverride[]::new))
             .addField(new KeyedCodec<>("DiscoveryMode", Codec.STRING),
                     (config, value) -> config.discoveryMode = DiscoveryMode.fromString(value),
                     config -> config.discoveryMode.name())
@@ -32,13 +42,54 @@ public class EchoExchangeConfig {
                         }
                     },
                     config -> config.upgradeSlots.toArray(new UpgradeSlotConfig[0]))
+            .addField(new KeyedCodec<>("PersistenceMode", Codec.STRING),
+                    (config, value) -> config.persistenceMode = PersistenceMode.fromString(value),
+                    config -> config.persistenceMode.name())
+            .addField(new KeyedCodec<>("JournalCheckpointIntervalSeconds", Codec.INTEGER),
+                    (config, value) -> config.journalCheckpointIntervalSeconds = value,
+                    config -> config.journalCheckpointIntervalSeconds)
+            .addField(new KeyedCodec<>("JournalSegmentMaxBytes", Codec.INTEGER),
+                    (config, value) -> config.journalSegmentMaxBytes = value,
+                    config -> config.journalSegmentMaxBytes)
+            .addField(new KeyedCodec<>("StorageFormat", Codec.STRING),
+                    (config, value) -> config.storageFormat = StorageFormat.fromString(value),
+                    config -> config.storageFormat.name())
+            .addField(new KeyedCodec<>("BackupGenerations", Codec.INTEGER),
+                    (config, value) -> config.backupGenerations = value,
+                    config -> config.backupGenerations)
+            .addField(new KeyedCodec<>("DiscoveryEvictionSeconds", Codec.INTEGER),
+                    (config, value) -> config.discoveryEvictionSeconds = value,
+                    config -> config.discoveryEvictionSeconds)
+            .addField(new KeyedCodec<>("ValuationParallelism", Codec.INTEGER),
+                    (config, value) -> config.valuationParallelism = value,
+                    config -> config.valuationParallelism)
+            .addField(new KeyedCodec<>("SearchDebounceMillis", Codec.INTEGER),
+                    (config, value) -> config.searchDebounceMillis = value,
+                    config -> config.searchDebounceMillis)
+            .addField(new KeyedCodec<>("DiscoveredPageRows", Codec.INTEGER),
+                    (config, value) -> config.discoveredPageRows = value,
+                    config -> config.discoveredPageRows)
+            .addField(new KeyedCodec<>("ViewerSyncMillis", Codec.INTEGER),
+                    (config, value) -> config.viewerSyncMillis = value,
+                    config -> config.viewerSyncMillis)
             .build();
 
     private int baseEchoStorage = 10000;
     private double capacityMultiplier = 2.0;
-    private Map<String, Integer> echoValueOverrides = new HashMap<>();
+    // Changed live by the echovalue command while valuation reads it
+    private Map<String, Integer> echoValueOverrides = new ConcurrentHashMap<>();
     private DiscoveryMode discoveryMode = DiscoveryMode.PerPlayer;
     private List<UpgradeSlotConfig> upgradeSlots = new ArrayList<>();
+    private PersistenceMode persistenceMode = PersistenceMode.Snapshot;
+    private int journalCheckpointIntervalSeconds = 300;
+    private int journalSegmentMaxBytes = 8 * 1024 * 1024;
+    private StorageFormat storageFormat = StorageFormat.Json;
+    private int backupGenerations = 3;
+    private int discoveryEvictionSeconds = 600;
+    private int valuationParallelism = 0;
+    private int searchDebounceMillis = 150;
+    private int discoveredPageRows = 6;
+    private int viewerSyncMillis = 250;
 
     public EchoExchangeConfig() {
         
@@ -88,6 +139,63 @@ public class EchoExchangeConfig {
         return upgradeSlots;
     }
 
+    @Nonnull
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode;
+    }
+
+    public int getJournalCheckpointIntervalSeconds() {
+        return journalCheckpointIntervalSeconds;
+    }
+
+    public int getJournalSegmentMaxBytes() {
+        return journalSegmentMaxBytes;
+    }
+
+    @Nonnull
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    public int getBackupGenerations() {
+        return backupGenerations;
+    }
+
+    /**
+     * How long a player's discoveries stay in memory after they disconnect.
+     */
+    public int getDiscoveryEvictionSeconds() {
+        return discoveryEvictionSeconds;
+    }
+
+    /**
+     * Threads used to pre-calculate echo values. 0 uses one per core, 1 calculates on the warm-up thread alone.
+     */
+    public int getValuationParallelism() {
+        return valuationParallelism;
+    }
+
+    /**
+     * How long a page waits after a search keystroke before rebuilding its grid. 0 rebuilds on every keystroke.
+     */
+    public int getSearchDebounceMillis() {
+        return searchDebounceMillis;
+    }
+
+    /**
+     * Rows of nine discovered items sent to a page at a time; the rest are reached with the page buttons.
+     */
+    public int getDiscoveredPageRows() {
+        return discoveredPageRows;
+    }
+
+    /**
+     * The shortest gap between pushes of a machine's changes to its other open pages. 0 pushes every change.
+     */
+    public int getViewerSyncMillis() {
+        return viewerSyncMillis;
+    }
+
     public static class UpgradeSlotConfig {
         public static final BuilderCodec<UpgradeSlotConfig> CODEC = BuilderCodec.<UpgradeSlotConfig>builder(
                 UpgradeSlotConfig.class, UpgradeSlotConfig::new)
@@ -119,6 +227,28 @@ public class EchoExchangeConfig {
         }
     }
 
+    public static class EchoValueOverride {
+        public static final BuilderCodec<EchoValueOverride> CODEC = BuilderCodec.<EchoValueOverride>builder(
+                EchoValueOverride.class, EchoValueOverride::new)
+                .addField(new KeyedCodec<>("ItemId", Codec.STRING),
+                        (override, value) -> override.itemId = value,
+                        override -> override.itemId)
+                .addField(new KeyedCodec<>("Value", Codec.INTEGER),
+                        (override, value) -> override.value = value,
+                        override -> override.value)
+                .build();
+
+        private String itemId = "";
+        private int value = 0;
+
+        public EchoValueOverride() {}
+
+        public EchoValueOverride(String itemId, int value) {
+            this.itemId = itemId;
+            this.value = value;
+        }
+    }
+
     public enum DiscoveryMode {
         PerPlayer,
         Global,
@@ -132,4 +262,39 @@ public class EchoExchangeConfig {
             }
         }
     }
+
+    /**
+     * How machine and discovery data is written to disk.
+     * Snapshot rewrites the full data files whenever anything changes.
+     * Journal appends each change to a log and only rewrites the data files on checkpoints.
+     */
+    public enum PersistenceMode {
+        Snapshot,
+        Journal;
+
+        public static PersistenceMode fromString(String value) {
+            try {
+                return valueOf(value);
+            } catch (IllegalArgumentException e) {
+                return Snapshot; // Default fallback
+            }
+        }
+    }
+
+    /**
+     * Encoding of the machine and discovery files. Existing files are converted on startup
+     * when this changes.
+     */
+    public enum StorageFormat {
+        Json,
+        Binary;
+
+        public static StorageFormat fromString(String value) {
+            try {
+                return valueOf(value);
+            } catch (IllegalArgumentException e) {
+                return Json; // Default fallback
+            }
+        }
+    }
 }
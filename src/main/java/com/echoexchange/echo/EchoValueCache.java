@@ -0,0 +1,205 @@
+package com.echoexchange.echo;
+
+import com.echoexchange.EchoExchangePlugin;
+import com.echoexchange.item.ItemIdDictionary;
+import com.hypixel.hytale.server.core.asset.type.item.config.CraftingRecipe;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.asset.type.item.config.ItemResourceType;
+import com.hypixel.hytale.server.core.inventory.MaterialQuantity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+/**
+ * Persists the solved value table so a restart with unchanged assets and overrides does not
+ * have to value every item again.
+ * <p>
+ * The file stores a fingerprint of everything valuation reads (item levels, stack sizes and
+ * resource types, recipes, overrides) followed by item ID/value pairs. IDs are stored rather
+ * than dictionary indices because indices are only stable for the lifetime of the server.
+ */
+public final class EchoValueCache {
+
+    public static final String FILE_NAME = "echo_values.bin";
+
+    private static final int MAGIC = 0x45564331; // "EVC1"
+    // Bump whenever the valuation rules change so older caches are recalculated
+    private static final int VERSION = 2;
+
+    private EchoValueCache() {
+    }
+
+    /**
+     * Hashes the inputs of valuation in a fixed order, independent of asset load order and of
+     * how the item dictionary happened to be filled.
+     */
+    @Nonnull
+    public static byte[] fingerprint(@Nonnull RecipeIndex recipeIndex, @Nonnull Map<String, Integer> overrides) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeInt(VERSION);
+
+            List<String> itemIds = new ArrayList<>(Item.getAssetMap().getAssetMap().keySet());
+            itemIds.sort(null);
+            out.writeInt(itemIds.size());
+            for (String itemId : itemIds) {
+                Item item = Item.getAssetMap().getAsset(itemId);
+                out.writeUTF(itemId);
+                out.writeInt(item != null ? item.getItemLevel() : 0);
+                out.writeInt(item != null ? item.getMaxStack() : 0);
+
+                ItemResourceType[] resourceTypes = item != null ? item.getResourceTypes() : null;
+                out.writeInt(resourceTypes != null ? resourceTypes.length : 0);
+                if (resourceTypes != null) {
+                    for (ItemResourceType resourceType : resourceTypes) {
+                        out.writeUTF(resourceType != null && resourceType.getId() != null ? resourceType.getId() : "");
+                    }
+                }
+
+                // Recipe order matters: the first usable recipe wins
+                List<CraftingRecipe> recipes = recipeIndex.getRecipesFor(itemId);
+                out.writeInt(recipes.size());
+                for (CraftingRecipe recipe : recipes) {
+                    MaterialQuantity primaryOutput = recipe.getPrimaryOutput();
+                    out.writeInt(primaryOutput != null ? primaryOutput.getQuantity() : 0);
+                    MaterialQuantity[] inputs = recipe.getInput();
+                    out.writeInt(inputs != null ? inputs.length : 0);
+                    if (inputs != null) {
+                        for (MaterialQuantity input : inputs) {
+                            if (input.getItemId() != null) {
+                                out.writeByte(1);
+                                out.writeUTF(input.getItemId());
+                            } else if (input.getResourceTypeId() != null) {
+                                out.writeByte(2);
+                                out.writeUTF(input.getResourceTypeId());
+                            } else {
+                                out.writeByte(0);
+                            }
+                            out.writeInt(input.getQuantity());
+                        }
+                    }
+                }
+            }
+
+            Map<String, Integer> sortedOverrides = new TreeMap<>(overrides);
+            out.writeInt(sortedOverrides.size());
+            for (Map.Entry<String, Integer> entry : sortedOverrides.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        } catch (IOException e) {
+            // Writing to a digest never fails
+            throw new IllegalStateException(e);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the cached values sized to {@code itemCount}, with {@link EchoValueTable#UNKNOWN} for
+     *         items the cache does not cover, or null if there is no cache or its fingerprint differs
+     */
+    @Nullable
+    public static long[] load(@Nonnull File file, @Nonnull byte[] fingerprint, int itemCount) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            byte[] storedFingerprint = new byte[in.readUnsignedByte()];
+            in.readFully(storedFingerprint);
+            if (!Arrays.equals(storedFingerprint, fingerprint)) {
+                return null;
+            }
+
+            ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+            long[] values = new long[itemCount];
+            Arrays.fill(values, EchoValueTable.UNKNOWN);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String itemId = in.readUTF();
+                long value = in.readLong();
+                int itemIndex = dictionary.indexOf(itemId);
+                if (itemIndex >= 0 && itemIndex < itemCount) {
+                    values[itemIndex] = value;
+                }
+            }
+            return values;
+        } catch (IOException e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                .log("Failed to read Echo value cache, recalculating: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes every known value of the table. The file is replaced atomically so a crash
+     * mid-write leaves the previous cache, which the fingerprint check will still validate.
+     */
+    public static void save(@Nonnull File file, @Nonnull byte[] fingerprint, @Nonnull EchoValueTable table) {
+        ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(fingerprint.length);
+                out.write(fingerprint);
+
+                int count = 0;
+                for (int i = 0; i < table.size(); i++) {
+                    if (table.isKnown(i) && dictionary.getId(i) != null) {
+                        count++;
+                    }
+                }
+                out.writeInt(count);
+                for (int i = 0; i < table.size(); i++) {
+                    String itemId = dictionary.getId(i);
+                    if (table.isKnown(i) && itemId != null) {
+                        out.writeUTF(itemId);
+                        out.writeLong(table.get(i));
+                    }
+                }
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                .log("Failed to write Echo value cache: " + e.getMessage());
+        }
+    }
+}
@@ -1,23 +1,44 @@
 package com.echoexchange.echo;
 
 import com.echoexchange.EchoExchangePlugin;
-import com.hypixel.hytale.server.core.asset.type.item.config.Item;
-import com.hypixel.hytale.server.core.asset.type.item.config.CraftingRecipe;
-import com.hypixel.hytale.server.core.inventory.MaterialQuantity;
+import com.echoexchange.item.ItemIdDictionary;
+import com.echoexchange.storage.ExchangeMachineManager;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 
 public class EchoValueCalculator {
     
     private static EchoValueCalculator instance;
     
-    private final Map<String, Integer> valueCache = new ConcurrentHashMap<>();
+    // Each retry follows an asset reload that rebuilt the graph under the previous attempt
+    private static final int MAX_WARM_UP_ATTEMPTS = 3;
     
-    private final ThreadLocal<java.util.Set<String>> calculationStack = 
-        ThreadLocal.withInitial(java.util.HashSet::new);
+    // Every cache write goes through this one thread, so two writers never share the temp file
+    private static final ExecutorService CACHE_WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EchoExchange-ValueCache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Values for IDs that are neither assets nor recipe inputs, so they have no graph node
+    private final Map<String, Integer> unindexedValues = new ConcurrentHashMap<>();
+    
+    private volatile EchoValueTable valueTable = EchoValueTable.EMPTY;
+    private volatile RecipeIndex recipeIndex;
+    private volatile EchoValueGraph valueGraph;
+    // Done once the warm-up has valued every item or given up; until then pages show only known values
+    private volatile CompletableFuture<Void> warmUp = CompletableFuture.completedFuture(null);
     
     private EchoValueCalculator() {
         // Singleton
@@ -30,116 +51,373 @@ public class EchoValueCalculator {
         return instance;
     }
     
-    public int getEchoValue(@Nonnull String itemId) {
-        Integer cached = valueCache.get(itemId);
-        if (cached != null) {
-            return cached;
+    /**
+     * @return the recipe index, building it from the current assets on first use
+     */
+    @Nonnull
+    public RecipeIndex getRecipeIndex() {
+        RecipeIndex index = recipeIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = recipeIndex;
+                if (index == null) {
+                    index = RecipeIndex.build();
+                    recipeIndex = index;
+                }
+            }
         }
-        
-        int value = calculateEchoValue(itemId);
-        valueCache.put(itemId, value);
-        return value;
+        return index;
     }
     
-    private int calculateEchoValue(@Nonnull String itemId) {
-        Map<String, Integer> overrides = EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides();
-        if (overrides.containsKey(itemId)) {
-            return overrides.get(itemId);
+    /**
+     * @return the dependency graph, building it from the current assets and overrides on first use
+     */
+    @Nonnull
+    public EchoValueGraph getValueGraph() {
+        EchoValueGraph graph = valueGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = valueGraph;
+                if (graph == null) {
+                    graph = EchoValueGraph.build(getRecipeIndex(),
+                        EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides());
+                    valueGraph = graph;
+                }
+            }
         }
-        
-        // Get item asset
-        Item item = Item.getAssetMap().getAsset(itemId);
-        if (item == null) {
-            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
-                .log("Item not found: %s, defaulting to 1 Echo", itemId);
-            return 1;
+        return graph;
+    }
+    
+    /**
+     * @return true once the warm-up has finished, or if none was started. Before that, pages list only
+     *         items that already have a value instead of solving the rest on the world thread.
+     */
+    public boolean isReady() {
+        return warmUp.isDone();
+    }
+    
+    /**
+     * Runs the action once the warm-up has finished, whether or not it succeeded; at once if it already has.
+     * The action runs on the warm-up thread, so callers hand it on to their own thread.
+     */
+    public void whenReady(@Nonnull Runnable action) {
+        warmUp.whenComplete((ignored, error) -> action.run());
+    }
+    
+    /**
+     * @return the current value table; hold on to it to read many values consistently
+     */
+    @Nonnull
+    public EchoValueTable getValueTable() {
+        return valueTable;
+    }
+    
+    public int getEchoValue(@Nonnull String itemId) {
+        int itemIndex = ItemIdDictionary.getInstance().indexOf(itemId);
+        if (itemIndex < 0) {
+            return getUnindexedValue(itemId);
         }
-        
-        // Tier 2: Calculate from recipe if item has one
-        int recipeValue = calculateFromRecipes(itemId);
-        if (recipeValue > 0) {
-            return recipeValue;
+        return getEchoValueByIndex(itemIndex);
+    }
+    
+    /**
+     * Looks a value up by {@link ItemIdDictionary} index: an array read once values are calculated.
+     */
+    public int getEchoValueByIndex(int itemIndex) {
+        long value = valueTable.get(itemIndex);
+        if (value == EchoValueTable.UNKNOWN) {
+            value = calculateEchoValue(itemIndex);
         }
-        
-        // Tier 3: Fallback to ItemLevel-based calculation
-        return calculateFallbackValue(item);
+        return toInt(value);
     }
     
-    private int calculateFromRecipes(@Nonnull String itemId) {
-        java.util.Set<String> stack = calculationStack.get();
-        if (stack.contains(itemId)) {
-            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
-                .log("Circular recipe dependency detected for: %s", itemId);
-            return 0;
+    /**
+     * Solves the item together with whatever it depends on that is not known yet, then publishes
+     * a new table. Each component only depends on the ones below it, so this gives the same values as a full pass.
+     */
+    private long calculateEchoValue(int itemIndex) {
+        EchoValueGraph graph = getValueGraph();
+        if (itemIndex >= graph.getItemCount()) {
+            return getUnindexedValue(ItemIdDictionary.getInstance().getId(itemIndex));
         }
         
-        try {
-            stack.add(itemId);
-            
-            for (CraftingRecipe recipe : CraftingRecipe.getAssetMap().getAssetMap().values()) {
-                MaterialQuantity primaryOutput = recipe.getPrimaryOutput();
-                if (primaryOutput != null && itemId.equals(primaryOutput.getItemId())) {
-                    int recipeValue = calculateRecipeValue(recipe);
-                    if (recipeValue > 0) {
-                        return recipeValue;
-                    }
-                }
+        synchronized (this) {
+            EchoValueTable table = valueTable;
+            if (table.isKnown(itemIndex)) {
+                return table.get(itemIndex);
             }
+            graph = getValueGraph();
             
-            return 0;
-            
-        } finally {
-            stack.remove(itemId);
+            long[] values = new long[graph.getNodeCount()];
+            BitSet targets = graph.collectDependencies(itemIndex);
+            targets.andNot(table.copyKnownInto(values));
+            graph.solve(targets, values);
+            valueTable = table.with(graph.getItemCount(), targets, values);
+            return values[itemIndex];
         }
     }
     
-    private int calculateRecipeValue(@Nonnull CraftingRecipe recipe) {
-        int totalValue = 0;
-        
-        MaterialQuantity[] inputs = recipe.getInput();
-        if (inputs != null) {
-            for (MaterialQuantity input : inputs) {
-                String inputItemId = input.getItemId();
-                if (inputItemId != null) {
-                    int inputValue = getEchoValue(inputItemId);
-                    totalValue += inputValue * input.getQuantity();
-                } else if (input.getResourceTypeId() != null) {
-                    totalValue += 1 * input.getQuantity();
-                }
+    /**
+     * Makes sure every given item the graph knows has a value, solving any missing ones together.
+     *
+     * @return a table holding values for all of those items
+     */
+    @Nonnull
+    public EchoValueTable resolveAll(@Nonnull BitSet itemIndices) {
+        EchoValueTable table = valueTable;
+        EchoValueGraph graph = getValueGraph();
+        BitSet missing = new BitSet();
+        for (int itemIndex = itemIndices.nextSetBit(0); itemIndex >= 0 && itemIndex < graph.getItemCount();
+             itemIndex = itemIndices.nextSetBit(itemIndex + 1)) {
+            if (!table.isKnown(itemIndex)) {
+                missing.set(itemIndex);
             }
         }
+        if (missing.isEmpty()) {
+            return table;
+        }
         
-        MaterialQuantity primaryOutput = recipe.getPrimaryOutput();
-        int outputQuantity = (primaryOutput != null && primaryOutput.getQuantity() > 0) 
-            ? primaryOutput.getQuantity() 
-            : 1;
-        
-        return Math.max(1, totalValue / outputQuantity);
+        synchronized (this) {
+            // A refresh may have swapped the graph and table since they were read above
+            graph = getValueGraph();
+            table = valueTable;
+            long[] values = new long[graph.getNodeCount()];
+            BitSet targets = graph.collectDependencies(missing);
+            targets.andNot(table.copyKnownInto(values));
+            graph.solve(targets, values);
+            table = table.with(graph.getItemCount(), targets, values);
+            valueTable = table;
+            return table;
+        }
     }
     
-    private int calculateFallbackValue(@Nonnull Item item) {
-        int itemLevel = item.getItemLevel();
-        int baseValue = itemLevel * itemLevel * Math.max((101 - item.getMaxStack()) / 10, 1 );
-        return (Math.max(1, baseValue));
+    private int getUnindexedValue(String itemId) {
+        if (itemId == null) {
+            return 1;
+        }
+        return unindexedValues.computeIfAbsent(itemId, id -> {
+            Integer override = EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides().get(id);
+            if (override != null) {
+                return override;
+            }
+            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                .log("Item not found: %s, defaulting to 1 Echo", id);
+            return 1;
+        });
+    }
+    
+    private static int toInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
     }
     
     public void clearCache() {
-        valueCache.clear();
+        synchronized (this) {
+            valueTable = EchoValueTable.EMPTY;
+            unindexedValues.clear();
+            recipeIndex = null;
+            valueGraph = null;
+        }
         EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
             .log("Echo value cache cleared");
     }
     
+    /**
+     * Sets or, with null, removes an override, saves the config and recalculates only what it affects.
+     */
+    public void setEchoValueOverride(@Nonnull String itemId, @Nullable Integer value) {
+        synchronized (this) {
+            Map<String, Integer> overrides = EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides();
+            if (value != null) {
+                overrides.put(itemId, value);
+            } else {
+                overrides.remove(itemId);
+            }
+        }
+        EchoExchangePlugin.getInstance().saveModConfig();
+        refreshValues();
+    }
+    
+    /**
+     * Rebuilds the recipe index and graph from the current assets and overrides, then recalculates
+     * only the items whose pricing changed and everything that depends on them. Other values are
+     * carried over, and the result is published as one new table.
+     */
+    public void refreshValues() {
+        long startTime = System.nanoTime();
+        RecipeIndex index;
+        EchoValueTable table;
+        int recalculated;
+        
+        synchronized (this) {
+            EchoValueGraph previous = valueGraph;
+            index = RecipeIndex.build();
+            EchoValueGraph graph = EchoValueGraph.build(index,
+                EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides());
+            recipeIndex = index;
+            valueGraph = graph;
+            unindexedValues.clear();
+            if (previous == null) {
+                // Nothing was valued against the old graph
+                valueTable = EchoValueTable.EMPTY;
+                return;
+            }
+            
+            BitSet dependents = graph.collectDependents(graph.changedSince(previous));
+            long[] values = new long[graph.getNodeCount()];
+            BitSet known = valueTable.copyKnownInto(values);
+            known.andNot(dependents);
+            
+            // Dependents are solved again, along with any of their inputs that were never valued
+            BitSet targets = graph.collectDependencies(dependents);
+            targets.andNot(known);
+            graph.solve(targets, values);
+            table = valueTable.with(graph.getItemCount(), targets, values);
+            valueTable = table;
+            recalculated = targets.cardinality();
+        }
+        
+        EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+            .log("Recalculated %d item Echo values in %d ms", recalculated,
+                (System.nanoTime() - startTime) / 1_000_000);
+        saveCache(index, table);
+    }
+    
+    /**
+     * Values every item on a background thread so setup does not wait on it. Lookups made
+     * before it finishes are solved on demand; pages list only valued items until {@link #isReady()}.
+     */
+    @Nonnull
+    public CompletableFuture<Void> startWarmUp() {
+        // Created here so the warm-up thread and the setup thread never race to create it
+        ItemIdDictionary.getInstance();
+        
+        CompletableFuture<Void> warmUp = new CompletableFuture<>();
+        this.warmUp = warmUp;
+        Thread thread = new Thread(() -> {
+            try {
+                precalculateAll();
+                warmUp.complete(null);
+            } catch (Throwable e) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                    .log("Echo value warm-up failed, values will be calculated on demand: " + e.getMessage());
+                warmUp.completeExceptionally(e);
+            }
+        }, "EchoExchange-ValueWarmUp");
+        thread.setDaemon(true);
+        thread.start();
+        return warmUp;
+    }
+    
     public void precalculateAll() {
         EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
             .log("Pre-calculating Echo values for all items...");
         
-        int count = 0;
-        for (Item item : Item.getAssetMap().getAssetMap().values()) {
-            getEchoValue(item.getId());
-            count++;
+        for (int attempt = 0; attempt < MAX_WARM_UP_ATTEMPTS; attempt++) {
+            if (tryPrecalculateAll()) {
+                return;
+            }
+        }
+        EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+            .log("Assets kept changing during Echo value warm-up, values will be calculated on demand");
+    }
+    
+    /**
+     * Values every item against the current graph and publishes the result.
+     *
+     * @return false if the graph was rebuilt meanwhile and nothing was published
+     */
+    private boolean tryPrecalculateAll() {
+        RecipeIndex index = getRecipeIndex();
+        EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+            .log("Indexed %d crafting recipes", index.getRecipeCount());
+        
+        EchoValueGraph graph = getValueGraph();
+        long startTime = System.nanoTime();
+        
+        // Unchanged assets and overrides give unchanged values, so reuse the last run's table
+        File cacheFile = getCacheFile();
+        byte[] fingerprint = EchoValueCache.fingerprint(index,
+            EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides());
+        if (cacheFile != null) {
+            long[] cachedValues = EchoValueCache.load(cacheFile, fingerprint, graph.getItemCount());
+            if (cachedValues != null) {
+                if (!publishWarmUp(graph, EchoValueTable.of(cachedValues))) {
+                    return false;
+                }
+                EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+                    .log("Loaded %d item Echo values from cache in %d ms", graph.getItemCount(),
+                        (System.nanoTime() - startTime) / 1_000_000);
+                return true;
+            }
+        }
+        
+        int parallelism = EchoExchangePlugin.getInstance().getModConfig().getValuationParallelism();
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        
+        long[] values;
+        if (parallelism > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                values = graph.solveAllParallel(pool);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            values = graph.solveAll();
+        }
+        
+        // Resource type nodes sit past the items and only matter while solving
+        EchoValueTable table = EchoValueTable.of(Arrays.copyOf(values, graph.getItemCount()));
+        if (!publishWarmUp(graph, table)) {
+            return false;
         }
         
         EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
-            .log("Pre-calculated %d item Echo values", count);
+            .log("Pre-calculated %d item Echo values in %d ms on %d threads", graph.getItemCount(),
+                (System.nanoTime() - startTime) / 1_000_000, parallelism);
+        
+        saveCache(index, table);
+        return true;
+    }
+    
+    /**
+     * Publishes a warm-up result unless the graph was rebuilt meanwhile, in which case the
+     * result is stale and the warm-up has to run again against the new graph.
+     */
+    private boolean publishWarmUp(@Nonnull EchoValueGraph graph, @Nonnull EchoValueTable table) {
+        synchronized (this) {
+            if (valueGraph != graph) {
+                return false;
+            }
+            valueTable = table;
+            return true;
+        }
+    }
+    
+    /**
+     * Queues the table to be written to the cache file. Writes run one at a time on the cache
+     * thread, and a table whose recipe index has since been replaced is skipped, since the
+     * refresh that replaced it queues its own.
+     */
+    private void saveCache(@Nonnull RecipeIndex index, @Nonnull EchoValueTable table) {
+        File cacheFile = getCacheFile();
+        if (cacheFile == null) {
+            return;
+        }
+        CACHE_WRITER.execute(() -> {
+            if (recipeIndex != index) {
+                return;
+            }
+            EchoValueCache.save(cacheFile, EchoValueCache.fingerprint(index,
+                EchoExchangePlugin.getInstance().getModConfig().getEchoValueOverrides()), table);
+        });
+    }
+    
+    @Nullable
+    private static File getCacheFile() {
+        File dataFolder = ExchangeMachineManager.getInstance().getDataFolder();
+        return dataFolder != null ? new File(dataFolder, EchoValueCache.FILE_NAME) : null;
     }
 }
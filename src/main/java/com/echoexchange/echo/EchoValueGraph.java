@@ -0,0 +1,650 @@
+package com.echoexchange.echo;
+
+import com.echoexchange.item.ItemIdDictionary;
+import com.hypixel.hytale.server.core.asset.type.item.config.CraftingRecipe;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.inventory.MaterialQuantity;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The recipe dependency graph in flat arrays, one node per {@link ItemIdDictionary} index,
+ * followed by one node per resource type that a recipe takes as an input. A resource type
+ * node is worth its cheapest member item, so resource inputs are priced like item inputs.
+ * <p>
+ * Values are solved without recursion: cycles are found with an iterative Tarjan pass and
+ * the resulting components are evaluated in dependency order, so every item is priced
+ * exactly once and the result does not depend on which item was asked for first.
+ * <p>
+ * Components at the same depth never read each other, so a full solve can price each
+ * depth level in parallel and still produce exactly the sequential result.
+ */
+public class EchoValueGraph {
+
+    private final int nodeCount;
+    // Nodes from itemCount on are resource types, resourceIds[node - itemCount]
+    private final int itemCount;
+    private final String[] resourceIds;
+    private final Map<String, Integer> resourceNodeById;
+    // Items with an override, or without an asset, are priced at their base value and have no edges
+    private final boolean[] fixed;
+    private final long[] baseValue;
+
+    // Recipes of node n are recipeStart[n] until recipeStart[n + 1], in asset order
+    private final int[] recipeStart;
+    private final int[] recipeOutputQuantity;
+    // Inputs of recipe r are inputStart[r] until inputStart[r + 1]
+    private final int[] inputStart;
+    private final int[] inputNode;
+    private final int[] inputQuantity;
+    // Reverse edges: nodes with a recipe taking node n are dependentNode[dependentStart[n]] until dependentStart[n + 1]
+    private final int[] dependentStart;
+    private final int[] dependentNode;
+
+    EchoValueGraph(int itemCount, @Nonnull String[] resourceIds, boolean[] fixed, long[] baseValue,
+                           int[] recipeStart, int[] recipeOutputQuantity,
+                           int[] inputStart, int[] inputNode, int[] inputQuantity) {
+        this.nodeCount = itemCount + resourceIds.length;
+        this.itemCount = itemCount;
+        this.resourceIds = resourceIds;
+        this.resourceNodeById = new HashMap<>();
+        for (int i = 0; i < resourceIds.length; i++) {
+            resourceNodeById.put(resourceIds[i], itemCount + i);
+        }
+        this.fixed = fixed;
+        this.baseValue = baseValue;
+        this.recipeStart = recipeStart;
+        this.recipeOutputQuantity = recipeOutputQuantity;
+        this.inputStart = inputStart;
+        this.inputNode = inputNode;
+        this.inputQuantity = inputQuantity;
+
+        this.dependentStart = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int input = firstInput(node); input < lastInput(node); input++) {
+                dependentStart[inputNode[input] + 1]++;
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            dependentStart[node + 1] += dependentStart[node];
+        }
+        this.dependentNode = new int[dependentStart[nodeCount]];
+        int[] fill = Arrays.copyOf(dependentStart, nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            for (int input = firstInput(node); input < lastInput(node); input++) {
+                dependentNode[fill[inputNode[input]]++] = node;
+            }
+        }
+    }
+
+    @Nonnull
+    public static EchoValueGraph build(@Nonnull RecipeIndex recipeIndex, @Nonnull Map<String, Integer> overrides) {
+        ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+
+        // Intern every ID the recipes mention up front so the node count is final
+        for (String itemId : Item.getAssetMap().getAssetMap().keySet()) {
+            dictionary.intern(itemId);
+        }
+        Set<String> resourceTypes = new TreeSet<>();
+        for (CraftingRecipe recipe : CraftingRecipe.getAssetMap().getAssetMap().values()) {
+            MaterialQuantity[] inputs = recipe.getInput();
+            if (inputs != null) {
+                for (MaterialQuantity input : inputs) {
+                    if (input.getItemId() != null) {
+                        dictionary.intern(input.getItemId());
+                    } else if (input.getResourceTypeId() != null) {
+                        resourceTypes.add(input.getResourceTypeId());
+                    }
+                }
+            }
+        }
+
+        int itemCount = dictionary.size();
+        String[] resourceIds = resourceTypes.toArray(new String[0]);
+        int nodeCount = itemCount + resourceIds.length;
+        boolean[] fixed = new boolean[nodeCount];
+        long[] baseValue = new long[nodeCount];
+        int[] recipeStart = new int[nodeCount + 1];
+        IntList recipeOutputQuantity = new IntList();
+        IntList inputStart = new IntList();
+        IntList inputNode = new IntList();
+        IntList inputQuantity = new IntList();
+
+        for (int node = 0; node < itemCount; node++) {
+            recipeStart[node] = recipeOutputQuantity.size();
+            String itemId = dictionary.getId(node);
+
+            Integer override = overrides.get(itemId);
+            if (override != null) {
+                fixed[node] = true;
+                baseValue[node] = override;
+                continue;
+            }
+
+            Item item = Item.getAssetMap().getAsset(itemId);
+            if (item == null) {
+                fixed[node] = true;
+                baseValue[node] = 1;
+                continue;
+            }
+            baseValue[node] = calculateFallbackValue(item);
+
+            for (CraftingRecipe recipe : recipeIndex.getRecipesFor(itemId)) {
+                MaterialQuantity primaryOutput = recipe.getPrimaryOutput();
+                recipeOutputQuantity.add(primaryOutput != null && primaryOutput.getQuantity() > 0
+                    ? primaryOutput.getQuantity()
+                    : 1);
+                inputStart.add(inputNode.size());
+
+                MaterialQuantity[] inputs = recipe.getInput();
+                if (inputs != null) {
+                    for (MaterialQuantity input : inputs) {
+                        if (input.getItemId() != null) {
+                            inputNode.add(dictionary.indexOf(input.getItemId()));
+                            inputQuantity.add(input.getQuantity());
+                        } else if (input.getResourceTypeId() != null) {
+                            inputNode.add(itemCount + Arrays.binarySearch(resourceIds, input.getResourceTypeId()));
+                            inputQuantity.add(input.getQuantity());
+                        }
+                    }
+                }
+            }
+        }
+
+        // A resource type has a single pseudo recipe over its members; one without members keeps the flat 1 per unit
+        for (int i = 0; i < resourceIds.length; i++) {
+            int node = itemCount + i;
+            recipeStart[node] = recipeOutputQuantity.size();
+            baseValue[node] = 1;
+
+            IntList members = new IntList();
+            for (String memberId : recipeIndex.getResourceTypeMembers(resourceIds[i])) {
+                int member = dictionary.indexOf(memberId);
+                if (member >= 0 && member < itemCount) {
+                    members.add(member);
+                }
+            }
+            if (members.size() == 0) {
+                fixed[node] = true;
+                continue;
+            }
+            recipeOutputQuantity.add(1);
+            inputStart.add(inputNode.size());
+            for (int member : members.toArray()) {
+                inputNode.add(member);
+                inputQuantity.add(1);
+            }
+        }
+        recipeStart[nodeCount] = recipeOutputQuantity.size();
+        inputStart.add(inputNode.size());
+
+        return new EchoValueGraph(itemCount, resourceIds, fixed, baseValue, recipeStart,
+            recipeOutputQuantity.toArray(), inputStart.toArray(), inputNode.toArray(), inputQuantity.toArray());
+    }
+
+    static long calculateFallbackValue(@Nonnull Item item) {
+        int itemLevel = item.getItemLevel();
+        long baseValue = (long) itemLevel * itemLevel * Math.max((101 - item.getMaxStack()) / 10, 1);
+        return Math.max(1, baseValue);
+    }
+
+    /**
+     * @return the number of nodes, resource types included; value arrays passed to {@link #solve} use this size
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of item nodes, which are the dictionary indices below this
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Solves every node in the graph.
+     */
+    @Nonnull
+    public long[] solveAll() {
+        BitSet targets = new BitSet(nodeCount);
+        targets.set(0, nodeCount);
+        long[] values = new long[nodeCount];
+        solve(targets, values);
+        return values;
+    }
+
+    /**
+     * Solves every node, pricing each depth level of the component graph in parallel on the pool.
+     */
+    @Nonnull
+    public long[] solveAllParallel(@Nonnull ForkJoinPool pool) {
+        BitSet targets = new BitSet(nodeCount);
+        targets.set(0, nodeCount);
+        long[] values = new long[nodeCount];
+        boolean[] resolved = new boolean[nodeCount];
+
+        for (List<int[]> level : groupByDepth(findComponents(targets))) {
+            pool.invoke(new LevelTask(level, 0, level.size(), values, resolved));
+        }
+        return values;
+    }
+
+    /**
+     * Depth of a component is one more than the deepest component it takes inputs from.
+     * Components arrive dependencies first, so one forward pass settles every depth.
+     */
+    @Nonnull
+    private List<List<int[]>> groupByDepth(@Nonnull List<int[]> components) {
+        int[] componentOf = new int[nodeCount];
+        int[] depth = new int[components.size()];
+        List<List<int[]>> levels = new ArrayList<>();
+
+        for (int c = 0; c < components.size(); c++) {
+            int[] component = components.get(c);
+            for (int node : component) {
+                componentOf[node] = c;
+            }
+
+            int componentDepth = 0;
+            for (int node : component) {
+                for (int input = firstInput(node); input < lastInput(node); input++) {
+                    int inputComponent = componentOf[inputNode[input]];
+                    if (inputComponent != c) {
+                        componentDepth = Math.max(componentDepth, depth[inputComponent] + 1);
+                    }
+                }
+            }
+            depth[c] = componentDepth;
+
+            while (levels.size() <= componentDepth) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(componentDepth).add(component);
+        }
+        return levels;
+    }
+
+    /**
+     * @return every node the given one depends on, directly or not, including itself
+     */
+    @Nonnull
+    public BitSet collectDependencies(int node) {
+        BitSet seeds = new BitSet(nodeCount);
+        seeds.set(node);
+        return collectDependencies(seeds);
+    }
+
+    /**
+     * @return every node the seeds depend on, directly or not, including the seeds
+     */
+    @Nonnull
+    public BitSet collectDependencies(@Nonnull BitSet seeds) {
+        return traverse(seeds, false);
+    }
+
+    /**
+     * @return every node whose value can change when a seed's does, including the seeds
+     */
+    @Nonnull
+    public BitSet collectDependents(@Nonnull BitSet seeds) {
+        return traverse(seeds, true);
+    }
+
+    @Nonnull
+    private BitSet traverse(@Nonnull BitSet seeds, boolean towardsDependents) {
+        BitSet reached = new BitSet(nodeCount);
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int node = seeds.nextSetBit(0); node >= 0 && node < nodeCount; node = seeds.nextSetBit(node + 1)) {
+            queue[tail++] = node;
+            reached.set(node);
+        }
+
+        while (head < tail) {
+            int current = queue[head++];
+            int start = towardsDependents ? dependentStart[current] : firstInput(current);
+            int end = towardsDependents ? dependentStart[current + 1] : lastInput(current);
+            for (int edge = start; edge < end; edge++) {
+                int next = towardsDependents ? dependentNode[edge] : inputNode[edge];
+                if (!reached.get(next)) {
+                    reached.set(next);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Compares the pricing inputs of each node with an older graph over the same dictionary.
+     * Resource type nodes are matched by ID, since their indices move when items are added.
+     *
+     * @return nodes whose base value or recipes differ, plus nodes the older graph did not have
+     */
+    @Nonnull
+    public BitSet changedSince(@Nonnull EchoValueGraph previous) {
+        BitSet changed = new BitSet(nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            int previousNode = previous.findNode(this, node);
+            if (previousNode < 0 || !samePricing(node, previous, previousNode)) {
+                changed.set(node);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the node in this graph matching the node of the other graph, or -1 if there is none
+     */
+    private int findNode(@Nonnull EchoValueGraph other, int otherNode) {
+        if (otherNode < other.itemCount) {
+            return otherNode < itemCount ? otherNode : -1;
+        }
+        Integer node = resourceNodeById.get(other.resourceIds[otherNode - other.itemCount]);
+        return node != null ? node : -1;
+    }
+
+    private boolean samePricing(int node, @Nonnull EchoValueGraph previous, int previousNode) {
+        if (fixed[node] != previous.fixed[previousNode] || baseValue[node] != previous.baseValue[previousNode]) {
+            return false;
+        }
+        int recipeCount = recipeStart[node + 1] - recipeStart[node];
+        if (recipeCount != previous.recipeStart[previousNode + 1] - previous.recipeStart[previousNode]) {
+            return false;
+        }
+
+        for (int i = 0; i < recipeCount; i++) {
+            int recipe = recipeStart[node] + i;
+            int previousRecipe = previous.recipeStart[previousNode] + i;
+            if (recipeOutputQuantity[recipe] != previous.recipeOutputQuantity[previousRecipe]) {
+                return false;
+            }
+            int inputCount = inputStart[recipe + 1] - inputStart[recipe];
+            if (inputCount != previous.inputStart[previousRecipe + 1] - previous.inputStart[previousRecipe]) {
+                return false;
+            }
+            for (int j = 0; j < inputCount; j++) {
+                int input = inputStart[recipe] + j;
+                int previousInput = previous.inputStart[previousRecipe] + j;
+                if (previous.findNode(this, inputNode[input]) != previous.inputNode[previousInput]
+                    || inputQuantity[input] != previous.inputQuantity[previousInput]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the value of every target node into {@code values}. Nodes outside the targets
+     * must already hold their final value there.
+     */
+    public void solve(@Nonnull BitSet targets, @Nonnull long[] values) {
+        boolean[] resolved = new boolean[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            resolved[node] = !targets.get(node);
+        }
+
+        for (int[] component : findComponents(targets)) {
+            evaluateComponent(component, values, resolved);
+        }
+    }
+
+    /**
+     * Iterative Tarjan over the target nodes. Components come out dependencies first,
+     * which is the order they have to be evaluated in.
+     */
+    @Nonnull
+    List<int[]> findComponents(@Nonnull BitSet targets) {
+        List<int[]> components = new ArrayList<>();
+        int[] order = new int[nodeCount];
+        int[] low = new int[nodeCount];
+        Arrays.fill(order, -1);
+        boolean[] onStack = new boolean[nodeCount];
+        int[] componentStack = new int[nodeCount];
+        int componentTop = 0;
+        int[] callStack = new int[nodeCount];
+        int[] nextInput = new int[nodeCount];
+        int counter = 0;
+
+        for (int root = targets.nextSetBit(0); root >= 0; root = targets.nextSetBit(root + 1)) {
+            if (order[root] >= 0) {
+                continue;
+            }
+
+            int callTop = 0;
+            callStack[callTop++] = root;
+            order[root] = low[root] = counter++;
+            nextInput[root] = firstInput(root);
+            componentStack[componentTop++] = root;
+            onStack[root] = true;
+
+            while (callTop > 0) {
+                int node = callStack[callTop - 1];
+                int end = lastInput(node);
+
+                if (nextInput[node] < end) {
+                    int next = inputNode[nextInput[node]++];
+                    if (!targets.get(next)) {
+                        continue;
+                    }
+                    if (order[next] < 0) {
+                        order[next] = low[next] = counter++;
+                        nextInput[next] = firstInput(next);
+                        componentStack[componentTop++] = next;
+                        onStack[next] = true;
+                        callStack[callTop++] = next;
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], order[next]);
+                    }
+                    continue;
+                }
+
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+
+                if (low[node] == order[node]) {
+                    int size = 0;
+                    while (componentStack[componentTop - 1 - size] != node) {
+                        size++;
+                    }
+                    size++;
+
+                    int[] component = new int[size];
+                    for (int i = 0; i < size; i++) {
+                        int member = componentStack[--componentTop];
+                        onStack[member] = false;
+                        component[i] = member;
+                    }
+                    Arrays.sort(component);
+                    components.add(component);
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Prices one component whose dependencies are all resolved.
+     * <p>
+     * Members are settled in passes with the earliest recipe whose inputs are all resolved.
+     * Whatever is left sits on a real cycle and uses its first recipe, with the unresolved
+     * inputs priced at their base value.
+     */
+    void evaluateComponent(@Nonnull int[] component, @Nonnull long[] values, @Nonnull boolean[] resolved) {
+        int pending = component.length;
+        boolean progress = true;
+        while (pending > 0 && progress) {
+            progress = false;
+            for (int node : component) {
+                if (resolved[node]) {
+                    continue;
+                }
+
+                long value = -1;
+                if (fixed[node] || recipeStart[node] == recipeStart[node + 1]) {
+                    value = baseValue[node];
+                } else {
+                    for (int recipe = recipeStart[node]; recipe < recipeStart[node + 1]; recipe++) {
+                        if (inputsResolved(recipe, resolved)) {
+                            value = recipeValue(node, recipe, values, resolved);
+                            break;
+                        }
+                    }
+                }
+
+                if (value >= 0) {
+                    values[node] = value;
+                    resolved[node] = true;
+                    pending--;
+                    progress = true;
+                }
+            }
+        }
+
+        if (pending == 0) {
+            return;
+        }
+
+        // Compute every leftover before storing any, so the order within the cycle does not matter
+        long[] cycleValues = new long[component.length];
+        for (int i = 0; i < component.length; i++) {
+            int node = component[i];
+            if (!resolved[node]) {
+                cycleValues[i] = recipeValue(node, recipeStart[node], values, resolved);
+            }
+        }
+        for (int i = 0; i < component.length; i++) {
+            int node = component[i];
+            if (!resolved[node]) {
+                values[node] = cycleValues[i];
+                resolved[node] = true;
+            }
+        }
+    }
+
+    private boolean inputsResolved(int recipe, @Nonnull boolean[] resolved) {
+        for (int input = inputStart[recipe]; input < inputStart[recipe + 1]; input++) {
+            if (!resolved[inputNode[input]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long recipeValue(int node, int recipe, @Nonnull long[] values, @Nonnull boolean[] resolved) {
+        if (node >= itemCount) {
+            // Any member satisfies a resource input, so it costs as much as the cheapest one
+            long cheapest = Long.MAX_VALUE;
+            for (int input = inputStart[recipe]; input < inputStart[recipe + 1]; input++) {
+                int member = inputNode[input];
+                cheapest = Math.min(cheapest, resolved[member] ? values[member] : baseValue[member]);
+            }
+            return cheapest;
+        }
+
+        long total = 0;
+        for (int input = inputStart[recipe]; input < inputStart[recipe + 1]; input++) {
+            int inputNodeIndex = inputNode[input];
+            long inputValue = resolved[inputNodeIndex] ? values[inputNodeIndex] : baseValue[inputNodeIndex];
+            total = saturatedAdd(total, saturatedMultiply(inputValue, inputQuantity[input]));
+        }
+        return Math.max(1, total / recipeOutputQuantity[recipe]);
+    }
+
+    private int firstInput(int node) {
+        return fixed[node] ? 0 : inputStart[recipeStart[node]];
+    }
+
+    private int lastInput(int node) {
+        return fixed[node] ? 0 : inputStart[recipeStart[node + 1]];
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return ((a ^ sum) & (b ^ sum)) < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        if (a <= 0 || b <= 0) {
+            return a * b;
+        }
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        return (high == 0 && low >= 0) ? low : Long.MAX_VALUE;
+    }
+
+    /**
+     * Evaluates a slice of one depth level, splitting until slices are small enough to run directly.
+     */
+    private final class LevelTask extends RecursiveAction {
+        private static final int THRESHOLD = 64;
+
+        private final List<int[]> components;
+        private final int from;
+        private final int to;
+        private final long[] values;
+        private final boolean[] resolved;
+
+        LevelTask(@Nonnull List<int[]> components, int from, int to, @Nonnull long[] values, @Nonnull boolean[] resolved) {
+            this.components = components;
+            this.from = from;
+            this.to = to;
+            this.values = values;
+            this.resolved = resolved;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    evaluateComponent(components.get(i), values, resolved);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelTask(components, from, middle, values, resolved),
+                new LevelTask(components, middle, to, values, resolved));
+        }
+    }
+
+    /**
+     * Growable int array so building the graph does not box every edge.
+     */
+    private static final class IntList {
+        private int[] data = new int[64];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        @Nonnull
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.echoexchange.echo;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Every valued item of one {@link EchoValueTable}, ordered by echo value from high to low
+ * (ties by item index). Built once per table, so a discovery grid is produced by walking
+ * this order with the player's discovery bits instead of sorting on every rebuild.
+ */
+public final class EchoValueOrder {
+
+    private final int[] itemIndices;
+    private final int[] values;
+
+    private EchoValueOrder(@Nonnull int[] itemIndices, @Nonnull int[] values) {
+        this.itemIndices = itemIndices;
+        this.values = values;
+    }
+
+    @Nonnull
+    static EchoValueOrder of(@Nonnull EchoValueTable table) {
+        // Pack (descending value, ascending index) into one long so a primitive sort does the ordering
+        long[] keys = new long[table.size()];
+        int count = 0;
+        for (int itemIndex = 0; itemIndex < table.size(); itemIndex++) {
+            if (table.isKnown(itemIndex)) {
+                long descending = 0xFFFFFFFFL - ((long) toInt(table.get(itemIndex)) - Integer.MIN_VALUE);
+                keys[count++] = ((descending << 32) | itemIndex) ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        int[] itemIndices = new int[count];
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            itemIndices[i] = (int) keys[i];
+            values[i] = toInt(table.get(itemIndices[i]));
+        }
+        return new EchoValueOrder(itemIndices, values);
+    }
+
+    public int size() {
+        return itemIndices.length;
+    }
+
+    public int getItemIndex(int position) {
+        return itemIndices[position];
+    }
+
+    public int getValue(int position) {
+        return values[position];
+    }
+
+    /**
+     * @return the first position whose value fits the budget; every position before it costs more
+     */
+    public int firstAffordable(long budget) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] > budget) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int toInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+}
@@ -0,0 +1,94 @@
+package com.echoexchange.echo;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable echo values indexed by {@link com.echoexchange.item.ItemIdDictionary} index.
+ * A new table is built and swapped in whenever values change, so a reader holding one
+ * always sees a consistent set of values.
+ */
+public final class EchoValueTable {
+
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    static final EchoValueTable EMPTY = new EchoValueTable(new long[0]);
+
+    private final long[] values;
+    // Built on first use; the table never changes so it never goes stale
+    private volatile EchoValueOrder valueOrder;
+
+    private EchoValueTable(@Nonnull long[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Wraps a fully solved value array; the array must not be modified afterwards.
+     */
+    @Nonnull
+    static EchoValueTable of(@Nonnull long[] values) {
+        return new EchoValueTable(values);
+    }
+
+    /**
+     * @return a copy of this table sized to {@code size}, with the given nodes taken from {@code updates};
+     *         nodes past {@code size} are not items and are left out
+     */
+    @Nonnull
+    EchoValueTable with(int size, @Nonnull BitSet nodes, @Nonnull long[] updates) {
+        long[] merged = Arrays.copyOf(values, Math.max(size, values.length));
+        if (merged.length > values.length) {
+            Arrays.fill(merged, values.length, merged.length, UNKNOWN);
+        }
+        for (int node = nodes.nextSetBit(0); node >= 0 && node < size; node = nodes.nextSetBit(node + 1)) {
+            merged[node] = updates[node];
+        }
+        return new EchoValueTable(merged);
+    }
+
+    /**
+     * @return the value at the item index, or {@link #UNKNOWN} if it has not been calculated
+     */
+    public long get(int itemIndex) {
+        return itemIndex >= 0 && itemIndex < values.length ? values[itemIndex] : UNKNOWN;
+    }
+
+    public boolean isKnown(int itemIndex) {
+        return get(itemIndex) != UNKNOWN;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return the known items of this table ordered by value, high to low
+     */
+    @Nonnull
+    public EchoValueOrder getValueOrder() {
+        EchoValueOrder order = valueOrder;
+        if (order == null) {
+            order = EchoValueOrder.of(this);
+            valueOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * Copies the known values into {@code target}, which must be at least as long as this table.
+     *
+     * @return the indices that were known
+     */
+    @Nonnull
+    BitSet copyKnownInto(@Nonnull long[] target) {
+        BitSet known = new BitSet(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != UNKNOWN) {
+                target[i] = values[i];
+                known.set(i);
+            }
+        }
+        return known;
+    }
+}
@@ -0,0 +1,86 @@
+package com.echoexchange.echo;
+
+import com.hypixel.hytale.server.core.asset.type.item.config.CraftingRecipe;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.asset.type.item.config.ItemResourceType;
+import com.hypixel.hytale.server.core.inventory.MaterialQuantity;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recipes indexed by the item they produce, and the member items of each resource type.
+ * The reverse edges used to revalue dependents live in {@link EchoValueGraph}. Built in one pass over the recipe and item assets so valuing an item never has to
+ * scan every recipe or item.
+ */
+public class RecipeIndex {
+
+    private final Map<String, List<CraftingRecipe>> recipesByOutput = new HashMap<>();
+    private final Map<String, List<String>> membersByResourceType = new HashMap<>();
+    private int recipeCount = 0;
+
+    private RecipeIndex() {
+    }
+
+    @Nonnull
+    public static RecipeIndex build() {
+        RecipeIndex index = new RecipeIndex();
+        for (CraftingRecipe recipe : CraftingRecipe.getAssetMap().getAssetMap().values()) {
+            index.add(recipe);
+        }
+        for (Item item : Item.getAssetMap().getAssetMap().values()) {
+            index.addResourceTypes(item);
+        }
+        return index;
+    }
+
+    private void add(@Nonnull CraftingRecipe recipe) {
+        MaterialQuantity primaryOutput = recipe.getPrimaryOutput();
+        if (primaryOutput == null || primaryOutput.getItemId() == null) {
+            return;
+        }
+
+        String outputItemId = primaryOutput.getItemId();
+        // Asset map order is kept so the first matching recipe still wins
+        recipesByOutput.computeIfAbsent(outputItemId, k -> new ArrayList<>(1)).add(recipe);
+        recipeCount++;
+    }
+
+    private void addResourceTypes(@Nonnull Item item) {
+        ItemResourceType[] resourceTypes = item.getResourceTypes();
+        if (resourceTypes == null) {
+            return;
+        }
+        for (ItemResourceType resourceType : resourceTypes) {
+            if (resourceType != null && resourceType.getId() != null) {
+                membersByResourceType.computeIfAbsent(resourceType.getId(), k -> new ArrayList<>()).add(item.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the recipes whose primary output is the item, in asset order
+     */
+    @Nonnull
+    public List<CraftingRecipe> getRecipesFor(@Nonnull String outputItemId) {
+        List<CraftingRecipe> recipes = recipesByOutput.get(outputItemId);
+        return recipes != null ? Collections.unmodifiableList(recipes) : Collections.emptyList();
+    }
+
+    /**
+     * @return the items that count as the given resource type when used as a recipe input
+     */
+    @Nonnull
+    public List<String> getResourceTypeMembers(@Nonnull String resourceTypeId) {
+        List<String> members = membersByResourceType.get(resourceTypeId);
+        return members != null ? Collections.unmodifiableList(members) : Collections.emptyList();
+    }
+
+    public int getRecipeCount() {
+        return recipeCount;
+    }
+}
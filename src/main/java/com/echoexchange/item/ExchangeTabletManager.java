@@ -28,6 +28,8 @@ public class ExchangeTabletManager {
         private int efficiencyUpgrade;
         private int speedUpgrade;
         private final Map<String, Integer> upgradeSlotProgress = new HashMap<>();
+        // Bumped on every mutation since the data was read from the item; not stored with it
+        private long version;
         
         public TabletData() {
             this.storedEchoes = 0;
@@ -43,21 +45,31 @@ public class ExchangeTabletManager {
             this.speedUpgrade = speedUpgrade;
         }
         
+        /**
+         * @return how many changes were made to the tablet's echoes or upgrades since it was read
+         */
+        public long getVersion() {
+            return version;
+        }
+        
         public long getStoredEchoes() {
             return storedEchoes;
         }
         
         public void setStoredEchoes(long echoes) {
             this.storedEchoes = Math.max(0, echoes);
+            version++;
         }
         
         public void addEchoes(long amount) {
             this.storedEchoes += amount;
+            version++;
         }
         
         public boolean removeEchoes(long amount) {
             if (storedEchoes >= amount) {
                 storedEchoes -= amount;
+                version++;
                 return true;
             }
             return false;
@@ -69,6 +81,7 @@ public class ExchangeTabletManager {
         
         public void setCapacityUpgrade(int level) {
             this.capacityUpgrade = Math.max(0, level);
+            version++;
         }
         
         public int getEfficiencyUpgrade() {
@@ -77,6 +90,7 @@ public class ExchangeTabletManager {
         
         public void setEfficiencyUpgrade(int level) {
             this.efficiencyUpgrade = Math.max(0, level);
+            version++;
         }
         
         public int getSpeedUpgrade() {
@@ -85,6 +99,7 @@ public class ExchangeTabletManager {
         
         public void setSpeedUpgrade(int level) {
             this.speedUpgrade = Math.max(0, level);
+            version++;
         }
         
         public long getMaxCapacity() {
@@ -100,6 +115,7 @@ public class ExchangeTabletManager {
         public void addUpgradeSlotProgress(String itemId, int amount) {
             int current = getUpgradeSlotProgress(itemId);
             upgradeSlotProgress.put(itemId, current + amount);
+            version++;
         }
         
         public int getUpgradeLevel() {
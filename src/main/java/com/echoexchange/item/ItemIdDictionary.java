@@ -0,0 +1,136 @@
+package com.echoexchange.item;
+
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps item IDs to dense int indices so per-player and per-machine item sets can be
+ * stored as bitsets. Seeded from the item asset map; IDs that are not (or no longer)
+ * assets are appended on first use so saved data referring to them survives.
+ * <p>
+ * Indices are only stable for the lifetime of the server. Anything written to disk
+ * stores the item IDs themselves.
+ */
+public class ItemIdDictionary {
+
+    // Volatile so a dictionary created by one loader thread is seen whole by the others
+    private static volatile ItemIdDictionary instance;
+
+    private final Map<String, Integer> indexById = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[0];
+    private volatile int size = 0;
+
+    private ItemIdDictionary(@Nonnull Collection<String> seedIds) {
+        List<String> assetIds = new ArrayList<>(seedIds);
+        // Sorted so the same asset set always yields the same indices
+        assetIds.sort(null);
+        ids = new String[Math.max(16, assetIds.size())];
+        for (String itemId : assetIds) {
+            intern(itemId);
+        }
+    }
+
+    public static ItemIdDictionary getInstance() {
+        ItemIdDictionary dictionary = instance;
+        if (dictionary != null) {
+            return dictionary;
+        }
+        // Shard loads ask for it from several threads at once; two dictionaries would hand out different indices
+        synchronized (ItemIdDictionary.class) {
+            if (instance == null) {
+                instance = new ItemIdDictionary(Item.getAssetMap().getAssetMap().keySet());
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Replaces the dictionary with one seeded from the given IDs instead of the item assets, for
+     * running storage code without an asset store. Indices from the previous dictionary no longer apply.
+     */
+    public static synchronized void initialize(@Nonnull Collection<String> seedIds) {
+        instance = new ItemIdDictionary(seedIds);
+    }
+
+    /**
+     * @return the index of the item ID, adding it if it has none yet
+     */
+    public int intern(@Nonnull String itemId) {
+        Integer existing = indexById.get(itemId);
+        if (existing != null) {
+            return existing;
+        }
+
+        synchronized (this) {
+            existing = indexById.get(itemId);
+            if (existing != null) {
+                return existing;
+            }
+
+            int index = size;
+            String[] current = ids;
+            if (index == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[index] = itemId;
+            // Publish the array before the index so a reader that finds the index can resolve it
+            ids = current;
+            size = index + 1;
+            indexById.put(itemId, index);
+            return index;
+        }
+    }
+
+    /**
+     * @return the index of the item ID, or -1 if it was never interned
+     */
+    public int indexOf(@Nonnull String itemId) {
+        Integer index = indexById.get(itemId);
+        return index != null ? index : -1;
+    }
+
+    @Nullable
+    public String getId(int index) {
+        return index >= 0 && index < size ? ids[index] : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Nonnull
+    public BitSet toBits(@Nonnull Collection<String> itemIds) {
+        BitSet bits = new BitSet(size);
+        for (String itemId : itemIds) {
+            bits.set(intern(itemId));
+        }
+        return bits;
+    }
+
+    @Nonnull
+    public String[] toIdArray(@Nonnull BitSet bits) {
+        String[] result = new String[bits.cardinality()];
+        String[] current = ids;
+        int i = 0;
+        for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+            result[i++] = current[index];
+        }
+        return result;
+    }
+
+    @Nonnull
+    public Set<String> toIdSet(@Nonnull BitSet bits) {
+        return new LinkedHashSet<>(Arrays.asList(toIdArray(bits)));
+    }
+}
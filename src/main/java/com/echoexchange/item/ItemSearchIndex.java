@@ -0,0 +1,269 @@
+package com.echoexchange.item;
+
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.modules.i18n.I18nModule;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lowercased item names and IDs with a trigram index, one per language, so filtering a
+ * discovery list by search text is a posting-list walk instead of resolving and lowercasing
+ * every item name per keystroke.
+ * <p>
+ * Matching keeps the old rule: the query must be a substring of the item's name or ID.
+ * Trigrams only narrow the candidates; each candidate is still checked with contains.
+ * <p>
+ * Indexes are built on a background thread, never by the search that needs one. Until a
+ * language's index is ready its searches resolve and check each item directly, which gives
+ * the same results more slowly.
+ */
+public class ItemSearchIndex {
+
+    private static ItemSearchIndex instance;
+
+    private static final String DEFAULT_LANGUAGE = "en-US";
+
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EchoExchange-SearchIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, LanguageIndex> indexByLanguage = new ConcurrentHashMap<>();
+    private final Set<String> buildingLanguages = ConcurrentHashMap.newKeySet();
+    // Bumped by clear so a build started before it doesn't publish a stale index
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private ItemSearchIndex() {
+    }
+
+    public static ItemSearchIndex getInstance() {
+        if (instance == null) {
+            instance = new ItemSearchIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts building the language's index in the background, unless it is built or building.
+     */
+    public void warm(@Nullable String language) {
+        String normalizedLanguage = language != null ? language : DEFAULT_LANGUAGE;
+        if (indexByLanguage.containsKey(normalizedLanguage) || !buildingLanguages.add(normalizedLanguage)) {
+            return;
+        }
+
+        int startGeneration = generation.get();
+        BUILDER.execute(() -> {
+            try {
+                LanguageIndex index = LanguageIndex.build(normalizedLanguage);
+                if (generation.get() == startGeneration) {
+                    indexByLanguage.put(normalizedLanguage, index);
+                }
+            } finally {
+                buildingLanguages.remove(normalizedLanguage);
+            }
+            // Cleared while building; start again against the new items
+            if (generation.get() != startGeneration) {
+                warm(normalizedLanguage);
+            }
+        });
+    }
+
+    /**
+     * Drops every language index and rebuilds the default one and any that were in use, for
+     * after item assets change.
+     */
+    public void clear() {
+        Set<String> languages = Set.copyOf(indexByLanguage.keySet());
+        generation.incrementAndGet();
+        indexByLanguage.clear();
+        warm(DEFAULT_LANGUAGE);
+        for (String language : languages) {
+            warm(language);
+        }
+    }
+
+    /**
+     * @return the items of {@code items} whose name in the language, or whose ID, contains the query
+     */
+    @Nonnull
+    public BitSet filter(@Nonnull BitSet items, @Nonnull String query, @Nullable String language) {
+        if (query.isEmpty()) {
+            return items;
+        }
+        String normalizedLanguage = language != null ? language : DEFAULT_LANGUAGE;
+        String normalizedQuery = query.toLowerCase(Locale.ROOT);
+        LanguageIndex index = indexByLanguage.get(normalizedLanguage);
+        if (index == null) {
+            warm(normalizedLanguage);
+            return scan(items, normalizedQuery, normalizedLanguage, 0);
+        }
+        return index.filter(items, normalizedQuery);
+    }
+
+    /**
+     * Checks every item of {@code items} from {@code fromIndex} on by resolving its name.
+     */
+    @Nonnull
+    private static BitSet scan(@Nonnull BitSet items, @Nonnull String query, @Nonnull String language,
+                               int fromIndex) {
+        BitSet result = new BitSet();
+        if (items.nextSetBit(fromIndex) < 0) {
+            return result;
+        }
+        ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+        for (int itemIndex = items.nextSetBit(fromIndex); itemIndex >= 0;
+             itemIndex = items.nextSetBit(itemIndex + 1)) {
+            String itemId = dictionary.getId(itemIndex);
+            if (itemId != null && searchTextOf(itemId, language).contains(query)) {
+                result.set(itemIndex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the lowercased "name\nid" an item is matched against; the newline keeps a match
+     *         from spanning both
+     */
+    @Nonnull
+    private static String searchTextOf(@Nonnull String itemId, @Nonnull String language) {
+        return (resolveName(itemId, language) + "\n" + itemId).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Resolves the display name an item is searched by: its translation in the language if
+     * there is one, otherwise the name from its translation properties, otherwise its ID.
+     */
+    @Nonnull
+    public static String resolveName(@Nonnull String itemId, @Nonnull String language) {
+        Item item = Item.getAssetMap().getAsset(itemId);
+        if (item != null) {
+            try {
+                String translated = I18nModule.get().getMessage(language, item.getTranslationKey());
+                if (translated != null && !translated.isEmpty()) {
+                    return translated;
+                }
+                if (item.getTranslationProperties() != null &&
+                    item.getTranslationProperties().getName() != null &&
+                    !item.getTranslationProperties().getName().startsWith("server.")) {
+                    return item.getTranslationProperties().getName();
+                }
+            } catch (Exception e) {
+                // Fall through to fallback
+            }
+        }
+        return itemId.replace("_", " ");
+    }
+
+    static final class LanguageIndex {
+        private final String language;
+        // Lowercased search text per item index
+        private final String[] searchText;
+        private final Map<Integer, int[]> postingsByTrigram;
+
+        private LanguageIndex(@Nonnull String language, @Nonnull String[] searchText,
+                              @Nonnull Map<Integer, int[]> postingsByTrigram) {
+            this.language = language;
+            this.searchText = searchText;
+            this.postingsByTrigram = postingsByTrigram;
+        }
+
+        @Nonnull
+        static LanguageIndex build(@Nonnull String language) {
+            ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+            String[] searchText = new String[dictionary.size()];
+            for (int itemIndex = 0; itemIndex < searchText.length; itemIndex++) {
+                searchText[itemIndex] = searchTextOf(dictionary.getId(itemIndex), language);
+            }
+            return of(language, searchText);
+        }
+
+        /**
+         * @param searchText the lowercased search text of each item, by dictionary index
+         */
+        @Nonnull
+        static LanguageIndex of(@Nonnull String language, @Nonnull String[] searchText) {
+            Map<Integer, int[]> postings = new HashMap<>();
+            Map<Integer, Integer> postingSizes = new HashMap<>();
+
+            for (int itemIndex = 0; itemIndex < searchText.length; itemIndex++) {
+                String text = searchText[itemIndex];
+                for (int i = 0; i + 3 <= text.length(); i++) {
+                    int trigram = trigram(text, i);
+                    int[] list = postings.get(trigram);
+                    int size = postingSizes.getOrDefault(trigram, 0);
+                    // Items are visited in index order, so a repeat within one item is always the last entry
+                    if (list != null && size > 0 && list[size - 1] == itemIndex) {
+                        continue;
+                    }
+                    if (list == null) {
+                        list = new int[4];
+                    } else if (size == list.length) {
+                        list = Arrays.copyOf(list, size * 2);
+                    }
+                    list[size] = itemIndex;
+                    postings.put(trigram, list);
+                    postingSizes.put(trigram, size + 1);
+                }
+            }
+
+            postings.replaceAll((trigram, list) -> Arrays.copyOf(list, postingSizes.get(trigram)));
+            return new LanguageIndex(language, searchText, postings);
+        }
+
+        @Nonnull
+        BitSet filter(@Nonnull BitSet items, @Nonnull String query) {
+            BitSet result = new BitSet();
+
+            // Walk the shortest posting list of the query's trigrams; short queries check every item
+            int[] candidates = null;
+            for (int i = 0; i + 3 <= query.length(); i++) {
+                int[] list = postingsByTrigram.get(trigram(query, i));
+                if (list == null) {
+                    candidates = new int[0];
+                    break;
+                }
+                if (candidates == null || list.length < candidates.length) {
+                    candidates = list;
+                }
+            }
+
+            if (candidates != null) {
+                for (int itemIndex : candidates) {
+                    if (items.get(itemIndex) && searchText[itemIndex].contains(query)) {
+                        result.set(itemIndex);
+                    }
+                }
+            } else {
+                for (int itemIndex = items.nextSetBit(0); itemIndex >= 0 && itemIndex < searchText.length;
+                     itemIndex = items.nextSetBit(itemIndex + 1)) {
+                    if (searchText[itemIndex].contains(query)) {
+                        result.set(itemIndex);
+                    }
+                }
+            }
+
+            // Items interned after this index was built are matched directly
+            result.or(scan(items, query, language, searchText.length));
+            return result;
+        }
+
+        private static int trigram(@Nonnull String text, int offset) {
+            // Three UTF-16 units fit an int only approximately; collisions just add candidates
+            return (text.charAt(offset) * 31 + text.charAt(offset + 1)) * 31 + text.charAt(offset + 2);
+        }
+    }
+}
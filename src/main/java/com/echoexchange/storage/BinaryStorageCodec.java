@@ -0,0 +1,367 @@
+package com.echoexchange.storage;
+
+import com.echoexchange.item.ItemIdDictionary;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of the machine and discovery storage files.
+ * <p>
+ * Layout: a four byte magic, a varint version, then a string table holding every item ID
+ * once. Entries refer to item IDs by table index, numbers are varints and UUIDs are two longs.
+ * <p>
+ * The discovered item IDs come first in the table, and each discovery set is written either
+ * as a delta-encoded index list or as a bitmap over that part of the table, whichever is smaller.
+ * <p>
+ * Decoded data is filled in through the package-private load setters, so reading a file never
+ * journals anything or marks anything dirty.
+ */
+public final class BinaryStorageCodec {
+
+    private static final int MACHINES_MAGIC = 0x4545584D; // "EEXM"
+    private static final int DISCOVERIES_MAGIC = 0x45455844; // "EEXD"
+    private static final int VERSION = 1;
+
+    private BinaryStorageCodec() {
+    }
+
+    public static void writeMachines(@Nonnull OutputStream stream, @Nonnull ExchangeMachineManager.MachineStorage storage) throws IOException {
+        BitSet union = new BitSet();
+        for (ExchangeMachineManager.MachineEntry entry : storage.machines) {
+            union.or(entry.data.getDiscoveredBits());
+        }
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int[] tableIndex = buildDiscoveredTable(union, strings);
+        int discoveredCount = strings.size();
+        for (ExchangeMachineManager.MachineEntry entry : storage.machines) {
+            for (String itemId : entry.data.getUpgradeSlotProgressMap().keySet()) {
+                strings.putIfAbsent(itemId, strings.size());
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        out.writeInt(MACHINES_MAGIC);
+        writeVarInt(out, VERSION);
+        writeString(out, storage.world);
+        writeStringTable(out, strings);
+        writeVarInt(out, discoveredCount);
+
+        writeVarInt(out, storage.machines.size());
+        for (ExchangeMachineManager.MachineEntry entry : storage.machines) {
+            long position = MachinePosition.parsePosition(entry.key);
+            writeVarInt(out, zigZag(MachinePosition.unpackX(position)));
+            writeVarInt(out, zigZag(MachinePosition.unpackY(position)));
+            writeVarInt(out, zigZag(MachinePosition.unpackZ(position)));
+            writeVarLong(out, entry.data.getStoredEchoes());
+
+            writeIndexSet(out, entry.data.getDiscoveredBits(), tableIndex, discoveredCount);
+
+            Map<String, Integer> upgrades = entry.data.getUpgradeSlotProgressMap();
+            writeVarInt(out, upgrades.size());
+            for (Map.Entry<String, Integer> upgrade : upgrades.entrySet()) {
+                writeVarInt(out, strings.get(upgrade.getKey()));
+                writeVarInt(out, upgrade.getValue());
+            }
+        }
+        out.flush();
+    }
+
+    @Nonnull
+    public static ExchangeMachineManager.MachineStorage readMachines(@Nonnull InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        readHeader(in, MACHINES_MAGIC);
+
+        ExchangeMachineManager.MachineStorage storage = new ExchangeMachineManager.MachineStorage();
+        storage.world = readString(in);
+        String[] strings = readStringTable(in);
+        int[] dictionaryIndex = internDiscoveredTable(strings, readVarInt(in));
+
+        int count = readVarInt(in);
+        List<ExchangeMachineManager.MachineEntry> machines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int x = unZigZag(readVarInt(in));
+            int y = unZigZag(readVarInt(in));
+            int z = unZigZag(readVarInt(in));
+
+            ExchangeMachineManager.MachineData data = new ExchangeMachineManager.MachineData();
+            data.loadStoredEchoes(readVarLong(in));
+            data.setDiscoveredBits(readIndexSet(in, dictionaryIndex));
+
+            int upgrades = readVarInt(in);
+            for (int j = 0; j < upgrades; j++) {
+                String itemId = lookup(strings, readVarInt(in));
+                data.loadUpgradeSlotProgress(itemId, readVarInt(in));
+            }
+
+            machines.add(new ExchangeMachineManager.MachineEntry(
+                MachinePosition.toKey(storage.world, MachinePosition.pack(x, y, z)), data));
+        }
+        storage.machines = machines;
+        return storage;
+    }
+
+    public static void writeDiscoveries(@Nonnull OutputStream stream, @Nonnull ExchangeMachineManager.PlayerDiscoveriesStorage storage) throws IOException {
+        BitSet union = new BitSet();
+        for (ExchangeMachineManager.PlayerDiscoveriesEntry entry : storage.players) {
+            union.or(entry.discoveries.getDiscoveredBits());
+        }
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int[] tableIndex = buildDiscoveredTable(union, strings);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        out.writeInt(DISCOVERIES_MAGIC);
+        writeVarInt(out, VERSION);
+        writeStringTable(out, strings);
+
+        writeVarInt(out, storage.players.size());
+        for (ExchangeMachineManager.PlayerDiscoveriesEntry entry : storage.players) {
+            out.writeLong(entry.playerUuid.getMostSignificantBits());
+            out.writeLong(entry.playerUuid.getLeastSignificantBits());
+
+            writeIndexSet(out, entry.discoveries.getDiscoveredBits(), tableIndex, strings.size());
+            writeString(out, entry.discoveries.getSearchQuery());
+        }
+        out.flush();
+    }
+
+    @Nonnull
+    public static ExchangeMachineManager.PlayerDiscoveriesStorage readDiscoveries(@Nonnull InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        readHeader(in, DISCOVERIES_MAGIC);
+        String[] strings = readStringTable(in);
+        int[] dictionaryIndex = internDiscoveredTable(strings, strings.length);
+
+        int count = readVarInt(in);
+        List<ExchangeMachineManager.PlayerDiscoveriesEntry> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID playerUuid = new UUID(in.readLong(), in.readLong());
+
+            ExchangeMachineManager.PlayerDiscoveries discoveries = new ExchangeMachineManager.PlayerDiscoveries();
+            discoveries.setDiscoveredBits(readIndexSet(in, dictionaryIndex));
+            discoveries.loadSearchQuery(readString(in));
+
+            players.add(new ExchangeMachineManager.PlayerDiscoveriesEntry(playerUuid, discoveries));
+        }
+
+        ExchangeMachineManager.PlayerDiscoveriesStorage storage = new ExchangeMachineManager.PlayerDiscoveriesStorage();
+        storage.players = players;
+        return storage;
+    }
+
+    private static void readHeader(@Nonnull DataInputStream in, int expectedMagic) throws IOException {
+        int magic = in.readInt();
+        if (magic != expectedMagic) {
+            throw new IOException("Not an Echo Exchange storage file");
+        }
+
+        int version = readVarInt(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported storage version " + version);
+        }
+    }
+
+    /**
+     * Adds the IDs of every dictionary index in the union to the string table, in index order,
+     * so table indices of any subset come out sorted.
+     *
+     * @return the table index for each dictionary index, -1 where absent
+     */
+    @Nonnull
+    private static int[] buildDiscoveredTable(@Nonnull BitSet union, @Nonnull Map<String, Integer> strings) {
+        ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+        int[] tableIndex = new int[union.length()];
+        Arrays.fill(tableIndex, -1);
+        for (int index = union.nextSetBit(0); index >= 0; index = union.nextSetBit(index + 1)) {
+            tableIndex[index] = strings.size();
+            strings.put(dictionary.getId(index), strings.size());
+        }
+        return tableIndex;
+    }
+
+    @Nonnull
+    private static int[] internDiscoveredTable(@Nonnull String[] strings, int count) throws IOException {
+        if (count < 0 || count > strings.length) {
+            throw new IOException("Discovered table size out of range: " + count);
+        }
+
+        ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+        int[] dictionaryIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            dictionaryIndex[i] = dictionary.intern(strings[i]);
+        }
+        return dictionaryIndex;
+    }
+
+    /**
+     * Writes a set of dictionary indices as table indices. The low header bit selects the encoding:
+     * 0 is a count followed by gaps between sorted indices, 1 is a bitmap over the table.
+     */
+    private static void writeIndexSet(@Nonnull DataOutputStream out, @Nonnull BitSet bits,
+                                      @Nonnull int[] tableIndex, int tableSize) throws IOException {
+        int count = bits.cardinality();
+        int listBytes = 0;
+        int previous = -1;
+        for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+            int table = tableIndex[index];
+            listBytes += varIntSize(table - previous - 1);
+            previous = table;
+        }
+
+        int bitmapBytes = (tableSize + 7) / 8;
+        if (bitmapBytes < listBytes) {
+            BitSet tableBits = new BitSet(tableSize);
+            for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+                tableBits.set(tableIndex[index]);
+            }
+            writeVarInt(out, 1);
+            out.write(Arrays.copyOf(tableBits.toByteArray(), bitmapBytes));
+            return;
+        }
+
+        writeVarInt(out, count << 1);
+        previous = -1;
+        for (int index = bits.nextSetBit(0); index >= 0; index = bits.nextSetBit(index + 1)) {
+            int table = tableIndex[index];
+            writeVarInt(out, table - previous - 1);
+            previous = table;
+        }
+    }
+
+    @Nonnull
+    private static BitSet readIndexSet(@Nonnull DataInputStream in, @Nonnull int[] dictionaryIndex) throws IOException {
+        BitSet result = new BitSet();
+        int header = readVarInt(in);
+        if ((header & 1) != 0) {
+            byte[] bitmap = new byte[(dictionaryIndex.length + 7) / 8];
+            in.readFully(bitmap);
+            BitSet tableBits = BitSet.valueOf(bitmap);
+            for (int table = tableBits.nextSetBit(0); table >= 0; table = tableBits.nextSetBit(table + 1)) {
+                if (table >= dictionaryIndex.length) {
+                    throw new IOException("String table index out of range: " + table);
+                }
+                result.set(dictionaryIndex[table]);
+            }
+            return result;
+        }
+
+        int count = header >>> 1;
+        int table = -1;
+        for (int i = 0; i < count; i++) {
+            table += readVarInt(in) + 1;
+            if (table < 0 || table >= dictionaryIndex.length) {
+                throw new IOException("String table index out of range: " + table);
+            }
+            result.set(dictionaryIndex[table]);
+        }
+        return result;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeStringTable(@Nonnull DataOutputStream out, @Nonnull Map<String, Integer> strings) throws IOException {
+        writeVarInt(out, strings.size());
+        for (String value : strings.keySet()) {
+            writeString(out, value);
+        }
+    }
+
+    @Nonnull
+    private static String[] readStringTable(@Nonnull DataInputStream in) throws IOException {
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    @Nonnull
+    private static String lookup(@Nonnull String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("String table index out of range: " + index);
+        }
+        return strings[index];
+    }
+
+    private static void writeString(@Nonnull DataOutputStream out, @Nonnull String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    @Nonnull
+    private static String readString(@Nonnull DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(@Nonnull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(@Nonnull DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeVarLong(@Nonnull DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(@Nonnull DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -2,7 +2,7 @@ package com.echoexchange.storage;
 
 import com.echoexchange.EchoExchangePlugin;
 import com.echoexchange.config.EchoExchangeConfig;
-import com.hypixel.hytale.server.core.util.BsonUtil;
+import com.echoexchange.item.ItemIdDictionary;
 import com.hypixel.hytale.codec.util.RawJsonReader;
 import com.hypixel.hytale.codec.Codec;
 import com.hypixel.hytale.codec.KeyedCodec;
@@ -10,34 +10,64 @@ import com.hypixel.hytale.codec.builder.BuilderCodec;
 import com.hypixel.hytale.math.vector.Vector3i;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 public class ExchangeMachineManager {
     
     private static ExchangeMachineManager instance;
     
-    private final Map<String, MachineData> machineDataMap = new ConcurrentHashMap<>();
-    private final Map<UUID, PlayerDiscoveries> playerDiscoveriesMap = new ConcurrentHashMap<>();
-    private final AtomicBoolean isDirty = new AtomicBoolean(false);
+    private static final String LEGACY_MACHINES_FILE = "machines.json";
+    
+    private final Map<String, MachineShard> shards = new ConcurrentHashMap<>();
+    // Only players who are online or were recently; everyone else stays on disk until needed
+    private final LoadedPlayers loadedPlayers = new LoadedPlayers();
     private final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService shardExecutor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
     
-    private File dataFile;
-    private File playerDiscoveriesFile;
+    private File dataFolder;
+    private File shardFolder;
+    private File discoveriesFolder;
+    private EchoExchangeConfig.StorageFormat storageFormat = EchoExchangeConfig.StorageFormat.Json;
+    private MachineJournal journal;
     
     private ExchangeMachineManager() {
         saveExecutor.scheduleAtFixedRate(() -> {
-            if (isDirty.getAndSet(false)) {
-                saveData();
-                savePlayerDiscoveries();
+            MachineJournal activeJournal = journal;
+            if (activeJournal != null) {
+                activeJournal.flush();
+                if (activeJournal.isCheckpointDue()) {
+                    checkpoint(activeJournal);
+                }
+            } else {
+                // Each world saves independently, so a busy world never re-serializes idle ones
+                for (MachineShard shard : shards.values()) {
+                    if (shard.dirty.getAndSet(false)) {
+                        shardExecutor.execute(() -> saveShard(shard));
+                    }
+                }
+                // Search-only changes wait for eviction or shutdown
+                savePlayerDiscoveries(false);
             }
+            evictOfflinePlayers();
         }, 5, 5, TimeUnit.SECONDS);
     }
     
@@ -56,41 +86,174 @@ public class ExchangeMachineManager {
             echoExchangeFolder.mkdirs();
         }
         
-        this.dataFile = new File(echoExchangeFolder, "machines.json");
-        this.playerDiscoveriesFile = new File(echoExchangeFolder, "player_discoveries.json");
-        loadData();
-        loadPlayerDiscoveries();
+        EchoExchangeConfig config = EchoExchangePlugin.getInstance().getModConfig();
+        this.dataFolder = echoExchangeFolder;
+        this.storageFormat = config.getStorageFormat();
+        this.shardFolder = new File(echoExchangeFolder, StorageConverter.MACHINES_FOLDER);
+        this.discoveriesFolder = new File(echoExchangeFolder, StorageConverter.DISCOVERIES_FOLDER);
+        
+        // Seed the dictionary once, before conversion and the parallel shard loads decode discoveries against it
+        ItemIdDictionary.getInstance();
+        
+        // Bring files written in the other format over before loading
+        int converted = StorageConverter.convertAll(echoExchangeFolder, storageFormat);
+        if (converted > 0) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+                .log("Converted %d storage files to %s format", converted, storageFormat.name());
+        }
+        
+        File legacyFile = new File(echoExchangeFolder, LEGACY_MACHINES_FILE);
+        if (legacyFile.exists()) {
+            migrateLegacyMachines(legacyFile);
+        } else {
+            loadShards();
+        }
+        
+        File legacyDiscoveriesFile = new File(echoExchangeFolder,
+            StorageConverter.DISCOVERIES_FILE + StorageConverter.getExtension(storageFormat));
+        if (legacyDiscoveriesFile.exists()) {
+            migrateLegacyDiscoveries(legacyDiscoveriesFile);
+        }
+        
+        MachineJournal loadedJournal = new MachineJournal(new File(echoExchangeFolder, "journal"),
+            config.getJournalSegmentMaxBytes(), TimeUnit.SECONDS.toMillis(config.getJournalCheckpointIntervalSeconds()));
+        
+        // Segments left over from the last run hold changes newer than the snapshot
+        int replayed = loadedJournal.replay(new JournalReplayHandler());
+        long replayedThrough = loadedJournal.getLastSegment();
+        for (MachineShard shard : shards.values()) {
+            shard.pruneEmpty();
+        }
+        if (replayed > 0) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+                .log("Replayed %d journal records", replayed);
+        }
+        
+        if (config.getPersistenceMode() == EchoExchangeConfig.PersistenceMode.Journal) {
+            try {
+                loadedJournal.open();
+                this.journal = loadedJournal;
+            } catch (java.io.IOException e) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                    .log("Failed to open journal, falling back to snapshot saves: " + e.getMessage());
+            }
+        }
+        
+        // Fold the replayed tail into a fresh snapshot so it does not need replaying again
+        if (replayedThrough >= 0) {
+            saveExecutor.execute(() -> {
+                if (saveDirtyShards() && savePlayerDiscoveries(true)) {
+                    loadedJournal.deleteSegmentsThrough(replayedThrough);
+                }
+            });
+        }
+    }
+    
+    /**
+     * @return the EchoExchange folder of the universe, or null before {@link #initialize} has run
+     */
+    @Nullable
+    public File getDataFolder() {
+        return dataFolder;
+    }
+    
+    /**
+     * Seals the active journal segment, snapshots every changed world and drops the segments they cover.
+     */
+    private void checkpoint(@Nonnull MachineJournal activeJournal) {
+        long sealed = activeJournal.roll();
+        if (sealed < 0) {
+            return;
+        }
+        
+        if (saveDirtyShards() && savePlayerDiscoveries(true)) {
+            activeJournal.deleteSegmentsThrough(sealed);
+            EchoExchangePlugin.getInstance().getLogger().at(Level.FINE)
+                .log("Checkpointed journal through segment %d", sealed);
+        }
     }
     
     @Nonnull
-    private String getMachineKey(@Nonnull String worldName, @Nonnull Vector3i position) {
-        return worldName + ":" + position.x + "," + position.y + "," + position.z;
+    private MachineShard getShard(@Nonnull String worldName) {
+        return shards.computeIfAbsent(worldName, name -> new MachineShard(name, getShardFile(name)));
     }
     
     @Nonnull
-    public MachineData getMachineData(@Nonnull String worldName, @Nonnull Vector3i position) {
-        String key = getMachineKey(worldName, position);
-        return machineDataMap.computeIfAbsent(key, k -> new MachineData());
+    private File getShardFile(@Nonnull String worldName) {
+        return new File(shardFolder, worldName.replaceAll("[^A-Za-z0-9._-]", "_") + StorageConverter.getExtension(storageFormat));
     }
     
-    public void removeMachineData(@Nonnull String worldName, @Nonnull Vector3i position) {
-        String key = getMachineKey(worldName, position);
-        machineDataMap.remove(key);
-        isDirty.set(true);
+    /**
+     * Looks up the data for a machine without creating it.
+     *
+     * @return the data, or null if the machine holds nothing
+     */
+    @Nullable
+    public MachineData findMachineData(@Nonnull String worldName, @Nonnull Vector3i position) {
+        MachineShard shard = shards.get(worldName);
+        return shard != null ? shard.get(MachinePosition.pack(position)) : null;
+    }
+    
+    /**
+     * Gets the data for a machine to read or display. A machine that holds nothing has no entry and
+     * reads as {@link MachineData#EMPTY}; changes go through {@link #updateMachineData}.
+     */
+    @Nonnull
+    public MachineData viewMachineData(@Nonnull String worldName, @Nonnull Vector3i position) {
+        MachineData data = findMachineData(worldName, position);
+        return data != null ? data : MachineData.EMPTY;
+    }
+    
+    /**
+     * Changes a machine, creating its entry first if it holds nothing yet. An entry the change
+     * leaves empty is dropped again, so only machines that hold something stay in memory.
+     */
+    public void updateMachineData(@Nonnull String worldName, @Nonnull Vector3i position,
+                                  @Nonnull Consumer<MachineData> update) {
+        getShard(worldName).update(MachinePosition.pack(position), update);
     }
     
-    public void markDirty() {
-        isDirty.set(true);
+    public void removeMachineData(@Nonnull String worldName, @Nonnull Vector3i position) {
+        MachineShard shard = shards.get(worldName);
+        if (shard == null) {
+            return;
+        }
+        
+        long packedPosition = MachinePosition.pack(position);
+        if (shard.remove(packedPosition) == null) {
+            return;
+        }
+        // Dirty before journaling, so a checkpoint sealing the record also snapshots the removal
+        shard.dirty.set(true);
+        if (journal != null) {
+            journal.appendMachineRemove(MachinePosition.toKey(worldName, packedPosition));
+        }
     }
     
+    /**
+     * Gets a player's discoveries, reading them from disk first if they are not loaded.
+     * Normally {@link #onPlayerConnect} has already loaded them in the background.
+     */
     @Nonnull
     public PlayerDiscoveries getPlayerDiscoveries(@Nonnull UUID playerUuid) {
-        return playerDiscoveriesMap.computeIfAbsent(playerUuid, k -> new PlayerDiscoveries());
+        return loadedPlayers.get(playerUuid, this::loadPlayerDiscoveries);
+    }
+    
+    public void onPlayerConnect(@Nonnull UUID playerUuid) {
+        loadedPlayers.connect(playerUuid);
+        if (loadedPlayers.find(playerUuid) == null) {
+            CompletableFuture.runAsync(() -> getPlayerDiscoveries(playerUuid), shardExecutor);
+        }
+    }
+    
+    public void onPlayerDisconnect(@Nonnull UUID playerUuid) {
+        loadedPlayers.disconnect(playerUuid);
     }
     
     public void discoverItemForPlayer(@Nonnull UUID playerUuid, @Nonnull String itemId) {
-        getPlayerDiscoveries(playerUuid).discoverItem(itemId);
-        isDirty.set(true);
+        if (getPlayerDiscoveries(playerUuid).discoverItem(itemId) && journal != null) {
+            journal.appendPlayerDiscover(playerUuid, itemId);
+        }
     }
     
     public boolean hasPlayerDiscovered(@Nonnull UUID playerUuid, @Nonnull String itemId) {
@@ -102,135 +265,452 @@ public class ExchangeMachineManager {
         return getPlayerDiscoveries(playerUuid).getDiscoveredItems();
     }
     
+    /**
+     * @return the player's discoveries as {@link ItemIdDictionary} indices; read-only
+     */
+    @Nonnull
+    public BitSet getPlayerDiscoveredBits(@Nonnull UUID playerUuid) {
+        return getPlayerDiscoveries(playerUuid).getDiscoveredBits();
+    }
+    
     @Nonnull
     public String getPlayerSearchQuery(@Nonnull UUID playerUuid) {
         return getPlayerDiscoveries(playerUuid).getSearchQuery();
     }
     
+    /**
+     * Remembers the player's search text. This is UI state, so it is neither journaled nor saved
+     * on its own; it goes to disk with the next discovery save, eviction or shutdown.
+     */
     public void setPlayerSearchQuery(@Nonnull UUID playerUuid, @Nonnull String query) {
         getPlayerDiscoveries(playerUuid).setSearchQuery(query);
-        markDirty();
     }
     
-    private void loadData() {
-        if (!dataFile.exists()) {
+    /**
+     * Loads every world shard in parallel.
+     */
+    private void loadShards() {
+        String extension = StorageConverter.getExtension(storageFormat);
+        File[] files = shardFolder.listFiles((dir, name) -> name.endsWith(extension));
+        if (files == null || files.length == 0) {
             EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
                 .log("No existing machine data found, starting fresh");
             return;
         }
         
+        List<Callable<MachineShard>> tasks = new ArrayList<>();
+        for (File file : files) {
+            tasks.add(() -> loadShard(file));
+        }
+        
+        int machineCount = 0;
+        try {
+            for (Future<MachineShard> future : shardExecutor.invokeAll(tasks)) {
+                MachineShard shard = future.get();
+                if (shard != null) {
+                    shards.put(shard.worldName, shard);
+                    machineCount += shard.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to load machine data: " + e.getMessage());
+        }
+        
+        EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+            .log("Loaded %d Exchange Machines across %d worlds from disk", machineCount, shards.size());
+    }
+    
+    private MachineShard loadShard(@Nonnull File file) {
         try {
-            MachineStorage storage = RawJsonReader.readSync(dataFile.toPath(), MachineStorage.CODEC, 
+            MachineStorage storage = StorageConverter.readMachines(file, storageFormat);
+            if (storage == null || storage.world == null || storage.world.isEmpty()) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                    .log("Skipping machine data file without a world: %s", file.getName());
+                return null;
+            }
+            
+            MachineShard shard = new MachineShard(storage.world, file);
+            if (storage.machines != null) {
+                for (MachineEntry entry : storage.machines) {
+                    shard.putLoaded(entry.key, entry.data);
+                }
+            }
+            return shard;
+        } catch (java.io.IOException e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to load machine data from " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Splits the single pre-shard machines.json into one file per world.
+     * The old file is only renamed out of the way once every shard has been written.
+     */
+    private void migrateLegacyMachines(@Nonnull File legacyFile) {
+        try {
+            MachineStorage storage = RawJsonReader.readSync(legacyFile.toPath(), MachineStorage.CODEC, 
                 EchoExchangePlugin.getInstance().getLogger());
             
             if (storage != null && storage.machines != null) {
                 for (MachineEntry entry : storage.machines) {
-                    machineDataMap.put(entry.key, entry.data);
+                    MachineShard shard = getShard(MachinePosition.parseWorld(entry.key));
+                    shard.putLoaded(entry.key, entry.data);
+                    shard.dirty.set(true);
                 }
-                
-                EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
-                    .log("Loaded %d Exchange Machines from disk", machineDataMap.size());
             }
         } catch (java.io.IOException e) {
             EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
-                .log("Failed to load machine data: " + e.getMessage());
+                .log("Failed to read legacy machine data: " + e.getMessage());
+            return;
         }
+        
+        if (!saveDirtyShards()) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to migrate machines.json, will retry on next start");
+            return;
+        }
+        
+        File migratedFile = new File(legacyFile.getParentFile(), LEGACY_MACHINES_FILE + ".migrated");
+        if (!legacyFile.renameTo(migratedFile)) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                .log("Migrated machines.json but could not rename it");
+        }
+        
+        EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+            .log("Migrated machines.json into %d world files", shards.size());
     }
     
-    private void saveData() {
-        if (!dataFile.exists()) {
-            try {
-                Files.createDirectories(dataFile.toPath().getParent());
-                dataFile.createNewFile();
-            } catch (Exception e) {
-                EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
-                    .log("Failed to create machine data file: " + e.getMessage());
-                return;
+    /**
+     * Saves every dirty shard in parallel and waits for them to finish.
+     *
+     * @return true if all of them were written
+     */
+    private boolean saveDirtyShards() {
+        List<MachineShard> dirtyShards = new ArrayList<>();
+        for (MachineShard shard : shards.values()) {
+            if (shard.dirty.getAndSet(false)) {
+                dirtyShards.add(shard);
             }
         }
         
+        boolean saved = true;
+        if (shardExecutor.isShutdown()) {
+            // Shutdown has already drained the pool, so the last saves run here
+            for (MachineShard shard : dirtyShards) {
+                saved &= saveShard(shard);
+            }
+            return saved;
+        }
+        
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (MachineShard shard : dirtyShards) {
+            tasks.add(() -> saveShard(shard));
+        }
         try {
-            List<MachineEntry> entries = new ArrayList<>();
-            for (Map.Entry<String, MachineData> entry : machineDataMap.entrySet()) {
-                entries.add(new MachineEntry(entry.getKey(), entry.getValue()));
+            for (Future<Boolean> future : shardExecutor.invokeAll(tasks)) {
+                saved &= future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+        return saved;
+    }
+    
+    private boolean saveShard(@Nonnull MachineShard shard) {
+        synchronized (shard.saveLock) {
+            File file = shard.file;
+            if (!file.exists()) {
+                try {
+                    Files.createDirectories(file.toPath().getParent());
+                    file.createNewFile();
+                } catch (Exception e) {
+                    EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                        .log("Failed to create machine data file: " + e.getMessage());
+                    shard.dirty.set(true);
+                    return false;
+                }
             }
             
-            MachineStorage storage = new MachineStorage();
-            storage.machines = entries;
-            BsonUtil.writeSync(dataFile.toPath(), MachineStorage.CODEC, storage, 
-                EchoExchangePlugin.getInstance().getLogger());
-            
-            EchoExchangePlugin.getInstance().getLogger().at(Level.FINE)
-                .log("Saved %d Exchange Machines to disk", entries.size());
-        } catch (java.io.IOException e) {
-            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
-                .log("Failed to save machine data: " + e.getMessage());
+            try {
+                List<MachineEntry> entries = shard.toEntries();
+                
+                MachineStorage storage = new MachineStorage();
+                storage.world = shard.worldName;
+                storage.machines = entries;
+                StorageConverter.writeMachines(file, storageFormat, storage);
+                
+                EchoExchangePlugin.getInstance().getLogger().at(Level.FINE)
+                    .log("Saved %d Exchange Machines in world %s to disk", entries.size(), shard.worldName);
+                return true;
+            } catch (java.io.IOException e) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                    .log("Failed to save machine data for world " + shard.worldName + ": " + e.getMessage());
+                shard.dirty.set(true);
+                return false;
+            }
         }
     }
     
     public void shutdown() {
-        saveExecutor.shutdown();
+        // Ticks queue shard saves, so they stop first; then every queued save and load finishes
+        boolean drained = awaitShutdown(saveExecutor) & awaitShutdown(shardExecutor);
+        
+        MachineJournal activeJournal = journal;
+        journal = null;
+        // A save still running could fail after this, so the journal is only dropped once all have finished
+        boolean saved = drained & saveDirtyShards() & savePlayerDiscoveries(true);
+        if (activeJournal != null) {
+            activeJournal.close();
+            if (saved) {
+                activeJournal.deleteSegmentsThrough(activeJournal.getLastSegment());
+            }
+        }
+    }
+    
+    /**
+     * @return true if the executor finished its queued work in time
+     */
+    private static boolean awaitShutdown(@Nonnull ExecutorService executor) {
+        executor.shutdown();
         try {
-            saveExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            return executor.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            return false;
         }
-        saveData();
-        savePlayerDiscoveries();
     }
     
     public static class MachineData {
+        // Versions come from one counter, so a machine dropped and created again never repeats one a viewer has seen
+        private static final AtomicLong VERSIONS = new AtomicLong();
+        
+        /**
+         * What a machine without an entry reads as. Never stored, so it cannot be changed.
+         */
+        public static final MachineData EMPTY = new MachineData();
+        
         private long storedEchoes = 0;
-        private final Set<String> discoveredItems = new HashSet<>();
-        private final Map<String, Integer> upgradeSlotProgress = new HashMap<>();
+        // Indexed by ItemIdDictionary; never mutated in place, a discovery swaps in a copy
+        private volatile BitSet discoveredItems = new BitSet();
+        private Map<String, Integer> upgradeSlotProgress = new HashMap<>();
+        
+        // Set once a snapshot shares the upgrade map; the next mutation copies it first
+        private boolean sharedWithSnapshot = false;
+        
+        // Where this data lives; not serialized, set when the entry is created or loaded
+        private MachineShard shard;
+        private long position;
+        
+        // Bumped on every mutation so viewers can tell whether anything changed; not serialized
+        private volatile long version = 0;
+        
+        public MachineData() {
+        }
+        
+        private MachineData(MachineShard shard, long position) {
+            attach(shard, position);
+        }
+        
+        private void attach(MachineShard shard, long position) {
+            this.shard = shard;
+            this.position = position;
+        }
+        
+        @Nonnull
+        private String getKey() {
+            return MachinePosition.toKey(shard.worldName, position);
+        }
+        
+        /**
+         * Marks the shard dirty. Called under this machine's lock before the change is journaled, so a
+         * checkpoint that seals the record always finds the shard dirty and snapshots the change.
+         */
+        private void markChanged() {
+            if (shard != null) {
+                shard.dirty.set(true);
+            }
+        }
+        
+        /**
+         * Rejects changes to data that is not stored in a shard, such as {@link #EMPTY}, which would
+         * otherwise be lost silently.
+         */
+        private void requireStored() {
+            if (shard == null) {
+                throw new IllegalStateException("Machine data is not stored; change it through updateMachineData");
+            }
+        }
+        
+        /**
+         * @return true if this machine holds nothing worth storing
+         */
+        public boolean isEmpty() {
+            return storedEchoes == 0 && discoveredItems.isEmpty() && upgradeSlotProgress.isEmpty();
+        }
+        
+        /**
+         * Takes a read-only copy for saving. The collections are shared rather than copied;
+         * whichever side mutates next copies them first.
+         */
+        @Nonnull
+        private synchronized MachineData snapshot() {
+            MachineData copy = new MachineData();
+            copy.storedEchoes = storedEchoes;
+            copy.discoveredItems = discoveredItems;
+            copy.upgradeSlotProgress = upgradeSlotProgress;
+            sharedWithSnapshot = true;
+            return copy;
+        }
+        
+        private void ensureExclusive() {
+            if (sharedWithSnapshot) {
+                upgradeSlotProgress = new HashMap<>(upgradeSlotProgress);
+                sharedWithSnapshot = false;
+            }
+        }
+        
+        /**
+         * @return a counter that increases with every change to echoes, discoveries or upgrades
+         */
+        public long getVersion() {
+            return version;
+        }
         
         public long getStoredEchoes() {
             return storedEchoes;
         }
         
-        public void setStoredEchoes(long echoes) {
+        public synchronized void setStoredEchoes(long echoes) {
+            requireStored();
             this.storedEchoes = Math.max(0, echoes);
+            version = VERSIONS.incrementAndGet();
+            journalEchoes();
         }
         
-        public void addEchoes(long amount) {
+        public synchronized void addEchoes(long amount) {
+            requireStored();
             this.storedEchoes += amount;
+            version = VERSIONS.incrementAndGet();
+            journalEchoes();
         }
         
-        public boolean removeEchoes(long amount) {
-            if (storedEchoes >= amount) {
-                storedEchoes -= amount;
-                return true;
+        public synchronized boolean removeEchoes(long amount) {
+            requireStored();
+            if (storedEchoes < amount) {
+                return false;
             }
-            return false;
+            storedEchoes -= amount;
+            version = VERSIONS.incrementAndGet();
+            journalEchoes();
+            return true;
+        }
+        
+        /**
+         * Sets the balance while loading; not journaled and marks nothing dirty.
+         */
+        void loadStoredEchoes(long echoes) {
+            storedEchoes = Math.max(0, echoes);
         }
         
+        private void journalEchoes() {
+            markChanged();
+            MachineJournal journal = getInstance().journal;
+            if (journal != null && shard != null) {
+                journal.appendMachineEchoes(getKey(), storedEchoes);
+            }
+        }
+        
+        @Nonnull
         public Set<String> getDiscoveredItems() {
+            return ItemIdDictionary.getInstance().toIdSet(discoveredItems);
+        }
+        
+        /**
+         * @return the discovered item indices; read-only, never modified after being published
+         */
+        @Nonnull
+        public BitSet getDiscoveredBits() {
             return discoveredItems;
         }
         
-        public void discoverItem(String itemId) {
-            discoveredItems.add(itemId);
+        /**
+         * Replaces the discoveries wholesale while loading; not journaled.
+         */
+        synchronized void setDiscoveredBits(@Nonnull BitSet bits) {
+            discoveredItems = bits;
+            version = VERSIONS.incrementAndGet();
+        }
+        
+        public synchronized void discoverItem(String itemId) {
+            requireStored();
+            int index = ItemIdDictionary.getInstance().intern(itemId);
+            if (discoveredItems.get(index)) {
+                return;
+            }
+            BitSet updated = (BitSet) discoveredItems.clone();
+            updated.set(index);
+            discoveredItems = updated;
+            version = VERSIONS.incrementAndGet();
+            
+            markChanged();
+            MachineJournal journal = getInstance().journal;
+            if (journal != null && shard != null) {
+                journal.appendMachineDiscover(getKey(), itemId);
+            }
         }
         
         public boolean hasDiscovered(String itemId) {
-            return discoveredItems.contains(itemId);
+            int index = ItemIdDictionary.getInstance().indexOf(itemId);
+            return index >= 0 && discoveredItems.get(index);
         }
         
         public int getUpgradeSlotProgress(String itemId) {
             return upgradeSlotProgress.getOrDefault(itemId, 0);
         }
         
-        public void setUpgradeSlotProgress(String itemId, int progress) {
+        @Nonnull
+        public Map<String, Integer> getUpgradeSlotProgressMap() {
+            return Collections.unmodifiableMap(upgradeSlotProgress);
+        }
+        
+        public synchronized void setUpgradeSlotProgress(String itemId, int progress) {
+            requireStored();
+            ensureExclusive();
             if (progress <= 0) {
                 upgradeSlotProgress.remove(itemId);
             } else {
                 upgradeSlotProgress.put(itemId, progress);
             }
+            version = VERSIONS.incrementAndGet();
+            
+            markChanged();
+            MachineJournal journal = getInstance().journal;
+            if (journal != null && shard != null) {
+                journal.appendMachineUpgrade(getKey(), itemId, Math.max(0, progress));
+            }
+        }
+        
+        /**
+         * Sets an upgrade slot's progress while loading; not journaled and marks nothing dirty.
+         */
+        void loadUpgradeSlotProgress(String itemId, int progress) {
+            if (progress > 0) {
+                upgradeSlotProgress.put(itemId, progress);
+            }
         }
         
         public void addUpgradeSlotProgress(String itemId, int amount) {
-            int current = getUpgradeSlotProgress(itemId);
-            setUpgradeSlotProgress(itemId, current + amount);
+            synchronized (this) {
+                int current = getUpgradeSlotProgress(itemId);
+                setUpgradeSlotProgress(itemId, current + amount);
+            }
         }
         
         public int getUpgradeLevel() {
@@ -318,12 +798,8 @@ public class ExchangeMachineManager {
                         (data, value) -> data.storedEchoes = value,
                         data -> data.storedEchoes)
                 .addField(new KeyedCodec<>("DiscoveredItems", Codec.STRING_ARRAY),
-                        (data, value) -> {
-                            for (String item : value) {
-                                data.discoveredItems.add(item);
-                            }
-                        },
-                        data -> data.discoveredItems.toArray(new String[0]))
+                        (data, value) -> data.discoveredItems = ItemIdDictionary.getInstance().toBits(java.util.Arrays.asList(value)),
+                        data -> ItemIdDictionary.getInstance().toIdArray(data.discoveredItems))
                 .addField(new KeyedCodec<>("UpgradeSlots", new com.hypixel.hytale.codec.codecs.array.ArrayCodec<>(UpgradeSlotEntry.CODEC, UpgradeSlotEntry[]::new)),
                         (data, value) -> {
                             for (UpgradeSlotEntry entry : value) {
@@ -340,9 +816,9 @@ public class ExchangeMachineManager {
                 .build();
     }
     
-    private static class MachineEntry {
-        private String key;
-        private MachineData data;
+    static class MachineEntry {
+        String key;
+        MachineData data;
         
         public MachineEntry() {
             this.key = "";
@@ -365,14 +841,132 @@ public class ExchangeMachineManager {
                 .build();
     }
     
-    private static class MachineStorage {
-        private List<MachineEntry> machines = new ArrayList<>();
+    /**
+     * All machines in one world, keyed by packed block position, saved to their own file
+     * with their own dirty flag. The string keys are only rebuilt when writing to disk.
+     */
+    static class MachineShard {
+        private final String worldName;
+        private final File file;
+        private final LongObjectMap<MachineData> machines = new LongObjectMap<>();
+        private final AtomicBoolean dirty = new AtomicBoolean(false);
+        // Serializes saves of this shard without blocking lookups on the shard itself
+        private final Object saveLock = new Object();
+        
+        MachineShard(String worldName, File file) {
+            this.worldName = worldName;
+            this.file = file;
+        }
+        
+        @Nullable
+        synchronized MachineData get(long position) {
+            return machines.get(position);
+        }
+        
+        @Nullable
+        private synchronized MachineData remove(long position) {
+            return machines.remove(position);
+        }
+        
+        @Nonnull
+        private synchronized MachineData getOrCreate(long position) {
+            MachineData data = machines.get(position);
+            if (data == null) {
+                data = new MachineData(this, position);
+                machines.put(position, data);
+            }
+            return data;
+        }
+        
+        /**
+         * Runs a change under the shard lock, so the entry is created, changed and, if left empty,
+         * dropped without another caller seeing or creating a second one in between.
+         */
+        synchronized void update(long position, @Nonnull Consumer<MachineData> update) {
+            MachineData data = getOrCreate(position);
+            update.accept(data);
+            if (data.isEmpty()) {
+                machines.remove(position);
+            }
+        }
+        
+        private synchronized void pruneEmpty() {
+            List<Long> empty = new ArrayList<>();
+            machines.forEach((position, data) -> {
+                if (data.isEmpty()) {
+                    empty.add(position);
+                }
+            });
+            
+            for (long position : empty) {
+                machines.remove(position);
+            }
+            if (!empty.isEmpty()) {
+                dirty.set(true);
+            }
+        }
+        
+        synchronized int size() {
+            return machines.size();
+        }
+        
+        private void putLoaded(@Nonnull String key, @Nonnull MachineData data) {
+            long position;
+            try {
+                position = MachinePosition.parsePosition(key);
+            } catch (IllegalArgumentException e) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                    .log("Skipping machine with malformed key: %s", key);
+                return;
+            }
+            
+            data.attach(this, position);
+            if (data.isEmpty()) {
+                // Older saves kept an entry for every machine ever opened; rewrite without them
+                dirty.set(true);
+                return;
+            }
+            synchronized (this) {
+                machines.put(position, data);
+            }
+        }
+        
+        /**
+         * Copies out a consistent snapshot of every machine that holds something, so serialization can
+         * run without any locks. Machine locks are only taken after the shard lock is released, since
+         * mutations lock the other way round.
+         */
+        @Nonnull
+        List<MachineEntry> toEntries() {
+            List<MachineData> live;
+            synchronized (this) {
+                live = new ArrayList<>(machines.size());
+                machines.forEach((position, data) -> live.add(data));
+            }
+            
+            List<MachineEntry> entries = new ArrayList<>(live.size());
+            for (MachineData data : live) {
+                MachineData snapshot = data.snapshot();
+                if (!snapshot.isEmpty()) {
+                    entries.add(new MachineEntry(MachinePosition.toKey(worldName, data.position), snapshot));
+                }
+            }
+            return entries;
+        }
+    }
+    
+    static class MachineStorage {
+        String world = "";
+        List<MachineEntry> machines = new ArrayList<>();
         
         public MachineStorage() {
         }
         
         public static final BuilderCodec<MachineStorage> CODEC = BuilderCodec.<MachineStorage>builder(
                 MachineStorage.class, MachineStorage::new)
+                .addField(new KeyedCodec<>("World", Codec.STRING),
+                        (storage, value) -> storage.world = value,
+                        storage -> storage.world)
                 .addField(new KeyedCodec<>("Machines", new com.hypixel.hytale.codec.codecs.array.ArrayCodec<>(MachineEntry.CODEC, MachineEntry[]::new)),
                         (storage, value) -> storage.machines = java.util.Arrays.asList(value),
                         storage -> storage.machines.toArray(new MachineEntry[0]))
@@ -380,87 +974,345 @@ public class ExchangeMachineManager {
     }
     
     public static class PlayerDiscoveries {
-        private final Set<String> discoveredItems = new HashSet<>();
-        private String searchQuery = "";
+        // Indexed by ItemIdDictionary; never mutated in place, a discovery swaps in a copy
+        private volatile BitSet discoveredItems = new BitSet();
+        private volatile String searchQuery = "";
+        
+        // Not serialized; tracked apart so typing in the search box never forces a write by itself
+        private final AtomicBoolean discoveriesDirty = new AtomicBoolean(false);
+        private final AtomicBoolean searchQueryDirty = new AtomicBoolean(false);
+        
+        // Bumped on every mutation so viewers can tell whether anything changed; not serialized
+        private volatile long version = 0;
         
         public PlayerDiscoveries() {
         }
         
+        /**
+         * Takes a read-only copy for saving. The bitset is immutable once published, so it is shared as is.
+         */
+        @Nonnull
+        private synchronized PlayerDiscoveries snapshot() {
+            PlayerDiscoveries copy = new PlayerDiscoveries();
+            copy.discoveredItems = discoveredItems;
+            copy.searchQuery = searchQuery;
+            return copy;
+        }
+        
+        @Nonnull
         public Set<String> getDiscoveredItems() {
+            return ItemIdDictionary.getInstance().toIdSet(discoveredItems);
+        }
+        
+        /**
+         * @return the discovered item indices; read-only, never modified after being published
+         */
+        @Nonnull
+        public BitSet getDiscoveredBits() {
             return discoveredItems;
         }
         
-        public void discoverItem(String itemId) {
-            discoveredItems.add(itemId);
+        synchronized void setDiscoveredBits(@Nonnull BitSet bits) {
+            discoveredItems = bits;
+            version++;
+        }
+        
+        /**
+         * @return true if the item was not discovered before
+         */
+        public synchronized boolean discoverItem(String itemId) {
+            int index = ItemIdDictionary.getInstance().intern(itemId);
+            if (discoveredItems.get(index)) {
+                return false;
+            }
+            BitSet updated = (BitSet) discoveredItems.clone();
+            updated.set(index);
+            discoveredItems = updated;
+            version++;
+            discoveriesDirty.set(true);
+            return true;
         }
         
         public boolean hasDiscovered(String itemId) {
-            return discoveredItems.contains(itemId);
+            int index = ItemIdDictionary.getInstance().indexOf(itemId);
+            return index >= 0 && discoveredItems.get(index);
         }
         
         public String getSearchQuery() {
             return searchQuery;
         }
         
-        public void setSearchQuery(String query) {
-            this.searchQuery = query != null ? query : "";
+        /**
+         * @return a counter that increases with every new discovery or search query
+         */
+        public long getVersion() {
+            return version;
+        }
+        
+        public synchronized void setSearchQuery(String query) {
+            String normalized = query != null ? query : "";
+            if (!normalized.equals(searchQuery)) {
+                this.searchQuery = normalized;
+                version++;
+                searchQueryDirty.set(true);
+            }
+        }
+        
+        /**
+         * Sets the search text while loading; marks nothing dirty.
+         */
+        void loadSearchQuery(String query) {
+            searchQuery = query != null ? query : "";
+        }
+        
+        void markClean() {
+            discoveriesDirty.set(false);
+            searchQueryDirty.set(false);
         }
         
         public static final BuilderCodec<PlayerDiscoveries> CODEC = BuilderCodec.<PlayerDiscoveries>builder(
                 PlayerDiscoveries.class, PlayerDiscoveries::new)
                 .addField(new KeyedCodec<>("DiscoveredItems", new com.hypixel.hytale.codec.codecs.array.ArrayCodec<>(Codec.STRING, String[]::new)),
-                        (discoveries, value) -> discoveries.discoveredItems.addAll(java.util.Arrays.asList(value)),
-                        discoveries -> discoveries.discoveredItems.toArray(new String[0]))
+                        (discoveries, value) -> discoveries.discoveredItems = ItemIdDictionary.getInstance().toBits(java.util.Arrays.asList(value)),
+                        discoveries -> ItemIdDictionary.getInstance().toIdArray(discoveries.discoveredItems))
                 .addField(new KeyedCodec<>("SearchQuery", Codec.STRING),
                         (discoveries, value) -> discoveries.searchQuery = value != null ? value : "",
                         discoveries -> discoveries.searchQuery != null ? discoveries.searchQuery : "")
                 .build();
     }
     
-    private void loadPlayerDiscoveries() {
-        if (!playerDiscoveriesFile.exists()) {
-            return;
+    @Nonnull
+    private File getPlayerDiscoveriesFile(@Nonnull UUID playerUuid) {
+        return new File(discoveriesFolder, playerUuid + StorageConverter.getExtension(storageFormat));
+    }
+    
+    @Nonnull
+    private PlayerDiscoveries loadPlayerDiscoveries(@Nonnull UUID playerUuid) {
+        File file = getPlayerDiscoveriesFile(playerUuid);
+        if (!file.exists()) {
+            return new PlayerDiscoveries();
         }
         
         try {
-            PlayerDiscoveriesStorage storage = RawJsonReader.readSync(playerDiscoveriesFile.toPath(), 
-                PlayerDiscoveriesStorage.CODEC, EchoExchangePlugin.getInstance().getLogger());
-            
-            for (PlayerDiscoveriesEntry entry : storage.players) {
-                playerDiscoveriesMap.put(entry.playerUuid, entry.discoveries);
+            PlayerDiscoveriesStorage storage = StorageConverter.readDiscoveries(file, storageFormat);
+            if (storage != null) {
+                for (PlayerDiscoveriesEntry entry : storage.players) {
+                    if (playerUuid.equals(entry.playerUuid)) {
+                        entry.discoveries.markClean();
+                        return entry.discoveries;
+                    }
+                }
             }
-            
-            EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
-                .log("Loaded discoveries for %d players from disk", storage.players.size());
         } catch (Exception e) {
             EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
-                .log("Failed to load player discoveries: " + e.getMessage());
+                .log("Failed to load discoveries for player " + playerUuid + ": " + e.getMessage());
         }
+        return new PlayerDiscoveries();
     }
     
-    private void savePlayerDiscoveries() {
-        try {
-            List<PlayerDiscoveriesEntry> entries = new ArrayList<>();
-            for (Map.Entry<UUID, PlayerDiscoveries> entry : playerDiscoveriesMap.entrySet()) {
-                entries.add(new PlayerDiscoveriesEntry(entry.getKey(), entry.getValue()));
+    /**
+     * Writes the file of every loaded player whose discoveries changed.
+     *
+     * @param includeSearchQueries also write players whose only change is their search text
+     * @return true if all of them were written
+     */
+    private boolean savePlayerDiscoveries(boolean includeSearchQueries) {
+        boolean saved = true;
+        int count = 0;
+        for (Map.Entry<UUID, PlayerDiscoveries> entry : loadedPlayers.entries()) {
+            PlayerDiscoveries discoveries = entry.getValue();
+            boolean changed = discoveries.discoveriesDirty.get()
+                || (includeSearchQueries && discoveries.searchQueryDirty.get());
+            if (!changed) {
+                continue;
             }
             
-            PlayerDiscoveriesStorage storage = new PlayerDiscoveriesStorage();
-            storage.players = entries;
-            BsonUtil.writeSync(playerDiscoveriesFile.toPath(), PlayerDiscoveriesStorage.CODEC, storage,
-                EchoExchangePlugin.getInstance().getLogger());
-            
+            if (savePlayerDiscoveries(entry.getKey(), discoveries)) {
+                count++;
+            } else {
+                saved = false;
+            }
+        }
+        
+        if (count > 0) {
             EchoExchangePlugin.getInstance().getLogger().at(Level.FINE)
-                .log("Saved discoveries for %d players to disk", entries.size());
+                .log("Saved discoveries for %d players to disk", count);
+        }
+        return saved;
+    }
+    
+    private boolean savePlayerDiscoveries(@Nonnull UUID playerUuid, @Nonnull PlayerDiscoveries discoveries) {
+        // Cleared before the snapshot so a change racing with the write marks it dirty again
+        boolean wasDirty = discoveries.discoveriesDirty.getAndSet(false);
+        boolean searchWasDirty = discoveries.searchQueryDirty.getAndSet(false);
+        try {
+            PlayerDiscoveriesStorage storage = new PlayerDiscoveriesStorage();
+            storage.players = List.of(new PlayerDiscoveriesEntry(playerUuid, discoveries.snapshot()));
+            StorageConverter.writeDiscoveries(getPlayerDiscoveriesFile(playerUuid), storageFormat, storage);
+            return true;
         } catch (java.io.IOException e) {
             EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
-                .log("Failed to save player discoveries: " + e.getMessage());
+                .log("Failed to save discoveries for player " + playerUuid + ": " + e.getMessage());
+            if (wasDirty) {
+                discoveries.discoveriesDirty.set(true);
+            }
+            if (searchWasDirty) {
+                discoveries.searchQueryDirty.set(true);
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Writes out and unloads players who have been offline longer than the configured period.
+     */
+    private void evictOfflinePlayers() {
+        long evictAfterMillis = TimeUnit.SECONDS.toMillis(
+            EchoExchangePlugin.getInstance().getModConfig().getDiscoveryEvictionSeconds());
+        int evicted = loadedPlayers.evict(System.currentTimeMillis(), evictAfterMillis, this::savePlayerDiscoveries);
+        if (evicted > 0) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.FINE)
+                .log("Unloaded discoveries for %d offline players", evicted);
+        }
+    }
+    
+    /**
+     * Splits the old shared player_discoveries file into one file per player. Players that already
+     * have their own file keep it. The old file is only renamed out of the way once every player is written.
+     */
+    private void migrateLegacyDiscoveries(@Nonnull File legacyFile) {
+        PlayerDiscoveriesStorage storage;
+        try {
+            storage = StorageConverter.readDiscoveries(legacyFile, storageFormat);
+        } catch (Exception e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to read legacy player discoveries: " + e.getMessage());
+            return;
         }
+        
+        boolean saved = true;
+        int migrated = 0;
+        if (storage != null) {
+            for (PlayerDiscoveriesEntry entry : storage.players) {
+                if (getPlayerDiscoveriesFile(entry.playerUuid).exists()) {
+                    continue;
+                }
+                if (savePlayerDiscoveries(entry.playerUuid, entry.discoveries)) {
+                    migrated++;
+                } else {
+                    saved = false;
+                }
+            }
+        }
+        
+        if (!saved) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to migrate %s, will retry on next start", legacyFile.getName());
+            return;
+        }
+        
+        File migratedFile = new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated");
+        if (!legacyFile.renameTo(migratedFile)) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                .log("Migrated %s but could not rename it", legacyFile.getName());
+        }
+        
+        EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
+            .log("Migrated discoveries for %d players into per-player files", migrated);
     }
     
-    private static class PlayerDiscoveriesEntry {
-        private UUID playerUuid;
-        private PlayerDiscoveries discoveries;
+    /**
+     * Discoveries of players who are online or left recently, and when each offline one was last seen.
+     * Loading and saving are passed in, so the rules for unloading a player live in one place.
+     */
+    static class LoadedPlayers {
+        private final Map<UUID, PlayerDiscoveries> discoveries = new ConcurrentHashMap<>();
+        private final Set<UUID> online = ConcurrentHashMap.newKeySet();
+        private final Map<UUID, Long> lastActiveMillis = new ConcurrentHashMap<>();
+        
+        @Nullable
+        PlayerDiscoveries find(@Nonnull UUID playerUuid) {
+            return discoveries.get(playerUuid);
+        }
+        
+        /**
+         * Returns the loaded discoveries, or loads them. The load runs outside the map's locks, so a slow
+         * read never blocks other players; if two threads load the same player, the first one kept wins.
+         */
+        @Nonnull
+        PlayerDiscoveries get(@Nonnull UUID playerUuid, @Nonnull Function<UUID, PlayerDiscoveries> load) {
+            PlayerDiscoveries loaded = discoveries.get(playerUuid);
+            if (loaded != null) {
+                return loaded;
+            }
+            
+            loaded = load.apply(playerUuid);
+            PlayerDiscoveries raced = discoveries.putIfAbsent(playerUuid, loaded);
+            if (raced != null) {
+                return raced;
+            }
+            if (!online.contains(playerUuid)) {
+                // Loaded for someone offline (e.g. by journal replay); let it age out like a disconnect
+                lastActiveMillis.putIfAbsent(playerUuid, System.currentTimeMillis());
+            }
+            return loaded;
+        }
+        
+        void connect(@Nonnull UUID playerUuid) {
+            online.add(playerUuid);
+            lastActiveMillis.remove(playerUuid);
+        }
+        
+        void disconnect(@Nonnull UUID playerUuid) {
+            online.remove(playerUuid);
+            lastActiveMillis.put(playerUuid, System.currentTimeMillis());
+        }
+        
+        @Nonnull
+        Set<Map.Entry<UUID, PlayerDiscoveries>> entries() {
+            return discoveries.entrySet();
+        }
+        
+        /**
+         * Unloads players who have been offline for at least {@code evictAfterMillis}, writing out their
+         * changes first. Anyone whose write fails, who reconnects or who changes something while being
+         * written stays loaded and is tried again later.
+         *
+         * @return how many players were unloaded
+         */
+        int evict(long now, long evictAfterMillis, @Nonnull BiPredicate<UUID, PlayerDiscoveries> save) {
+            int evicted = 0;
+            for (Map.Entry<UUID, PlayerDiscoveries> entry : discoveries.entrySet()) {
+                UUID playerUuid = entry.getKey();
+                Long lastActive = lastActiveMillis.get(playerUuid);
+                if (online.contains(playerUuid) || lastActive == null || now - lastActive < evictAfterMillis) {
+                    continue;
+                }
+                
+                PlayerDiscoveries loaded = entry.getValue();
+                if (isDirty(loaded) && !save.test(playerUuid, loaded)) {
+                    continue;
+                }
+                // The write can be slow; someone may have come back or discovered something meanwhile
+                if (online.contains(playerUuid) || isDirty(loaded)) {
+                    continue;
+                }
+                if (discoveries.remove(playerUuid, loaded)) {
+                    lastActiveMillis.remove(playerUuid, lastActive);
+                    evicted++;
+                }
+            }
+            return evicted;
+        }
+        
+        private static boolean isDirty(@Nonnull PlayerDiscoveries discoveries) {
+            return discoveries.discoveriesDirty.get() || discoveries.searchQueryDirty.get();
+        }
+    }
+    
+    static class PlayerDiscoveriesEntry {
+        UUID playerUuid;
+        PlayerDiscoveries discoveries;
         
         public PlayerDiscoveriesEntry() {
             this.playerUuid = UUID.randomUUID();
@@ -483,8 +1335,8 @@ public class ExchangeMachineManager {
                 .build();
     }
     
-    private static class PlayerDiscoveriesStorage {
-        private List<PlayerDiscoveriesEntry> players = new ArrayList<>();
+    static class PlayerDiscoveriesStorage {
+        List<PlayerDiscoveriesEntry> players = new ArrayList<>();
         
         public PlayerDiscoveriesStorage() {
         }
@@ -496,4 +1348,45 @@ public class ExchangeMachineManager {
                         storage -> storage.players.toArray(new PlayerDiscoveriesEntry[0]))
                 .build();
     }
-}
+    
+    /**
+     * Applies journal records directly to the loaded state, bypassing the journal itself.
+     */
+    private class JournalReplayHandler implements MachineJournal.ReplayHandler {
+        @Override
+        public void machineEchoes(@Nonnull String key, long echoes) {
+            replayTarget(key).setStoredEchoes(echoes);
+        }
+        
+        @Override
+        public void machineDiscover(@Nonnull String key, @Nonnull String itemId) {
+            replayTarget(key).discoverItem(itemId);
+        }
+        
+        @Override
+        public void machineUpgrade(@Nonnull String key, @Nonnull String itemId, int progress) {
+            replayTarget(key).setUpgradeSlotProgress(itemId, progress);
+        }
+        
+        @Override
+        public void machineRemove(@Nonnull String key) {
+            MachineShard shard = getShard(MachinePosition.parseWorld(key));
+            shard.remove(MachinePosition.parsePosition(key));
+            shard.dirty.set(true);
+        }
+        
+        @Override
+        public void playerDiscover(@Nonnull UUID playerUuid, @Nonnull String itemId) {
+            getPlayerDiscoveries(playerUuid).discoverItem(itemId);
+        }
+        
+        /**
+         * Replay goes through the normal mutators; the journal is not open yet, so nothing is re-journaled.
+         * Machines left empty are pruned once replay finishes.
+         */
+        @Nonnull
+        private MachineData replayTarget(@Nonnull String key) {
+            return getShard(MachinePosition.parseWorld(key)).getOrCreate(MachinePosition.parsePosition(key));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,361 @@
+package com.echoexchange.storage;
+
+import com.echoexchange.EchoExchangePlugin;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Append-only log of machine and discovery mutations.
+ * <p>
+ * Records always carry the resulting value (never a delta), so replaying a record
+ * that is already contained in the snapshot is harmless. The journal is split into
+ * numbered segments; a checkpoint seals the active segment, writes a snapshot and
+ * then deletes every sealed segment the snapshot covers.
+ */
+public class MachineJournal {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte OP_MACHINE_ECHOES = 1;
+    private static final byte OP_MACHINE_DISCOVER = 2;
+    private static final byte OP_MACHINE_UPGRADE = 3;
+    private static final byte OP_MACHINE_REMOVE = 4;
+    private static final byte OP_PLAYER_DISCOVER = 5;
+
+    private final File journalFolder;
+    private final long segmentMaxBytes;
+    private final long checkpointIntervalMillis;
+
+    private FileOutputStream segmentStream;
+    private DataOutputStream out;
+    private long activeSegment = -1;
+    private long lastCheckpointMillis = System.currentTimeMillis();
+    private boolean checkpointRequested = false;
+    private boolean hasUnflushedRecords = false;
+
+    public MachineJournal(@Nonnull File journalFolder, long segmentMaxBytes, long checkpointIntervalMillis) {
+        this.journalFolder = journalFolder;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    /**
+     * Opens a fresh segment after the highest one on disk. Existing segments are left
+     * untouched so they can still be replayed.
+     */
+    public synchronized void open() throws IOException {
+        if (!journalFolder.exists()) {
+            journalFolder.mkdirs();
+        }
+
+        List<Long> segments = listSegments();
+        long next = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        openSegment(next);
+    }
+
+    public synchronized void appendMachineEchoes(@Nonnull String key, long echoes) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            out.writeByte(OP_MACHINE_ECHOES);
+            out.writeUTF(key);
+            out.writeLong(echoes);
+        } catch (IOException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    public synchronized void appendMachineDiscover(@Nonnull String key, @Nonnull String itemId) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            out.writeByte(OP_MACHINE_DISCOVER);
+            out.writeUTF(key);
+            out.writeUTF(itemId);
+        } catch (IOException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    public synchronized void appendMachineUpgrade(@Nonnull String key, @Nonnull String itemId, int progress) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            out.writeByte(OP_MACHINE_UPGRADE);
+            out.writeUTF(key);
+            out.writeUTF(itemId);
+            out.writeInt(progress);
+        } catch (IOException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    public synchronized void appendMachineRemove(@Nonnull String key) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            out.writeByte(OP_MACHINE_REMOVE);
+            out.writeUTF(key);
+        } catch (IOException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    public synchronized void appendPlayerDiscover(@Nonnull UUID playerUuid, @Nonnull String itemId) {
+        if (!isWritable()) {
+            return;
+        }
+
+        try {
+            out.writeByte(OP_PLAYER_DISCOVER);
+            out.writeLong(playerUuid.getMostSignificantBits());
+            out.writeLong(playerUuid.getLeastSignificantBits());
+            out.writeUTF(itemId);
+        } catch (IOException e) {
+            onAppendFailed(e);
+        }
+    }
+
+    /**
+     * Pushes buffered records to disk and syncs the active segment. Only the hand-off of the
+     * buffer holds the journal lock; appends never wait for the sync itself.
+     */
+    public void flush() {
+        FileChannel channel;
+        synchronized (this) {
+            if (out == null || !hasUnflushedRecords) {
+                return;
+            }
+
+            try {
+                out.flush();
+            } catch (IOException e) {
+                onAppendFailed(e);
+                return;
+            }
+            hasUnflushedRecords = false;
+            channel = segmentStream.getChannel();
+        }
+
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Rolled in the meantime; closing the segment synced it
+        } catch (IOException e) {
+            synchronized (this) {
+                onAppendFailed(e);
+            }
+        }
+    }
+
+    public synchronized boolean isCheckpointDue() {
+        if (checkpointRequested) {
+            return true;
+        }
+        if (out == null || out.size() == 0) {
+            return false;
+        }
+        return out.size() >= segmentMaxBytes
+            || System.currentTimeMillis() - lastCheckpointMillis >= checkpointIntervalMillis;
+    }
+
+    /**
+     * Seals the active segment and starts a new one.
+     *
+     * @return the number of the sealed segment, or -1 if the journal could not roll
+     */
+    public synchronized long roll() {
+        long sealed = activeSegment;
+        try {
+            closeSegment();
+            openSegment(sealed + 1);
+        } catch (IOException e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to roll journal segment: " + e.getMessage());
+            return -1;
+        }
+
+        lastCheckpointMillis = System.currentTimeMillis();
+        checkpointRequested = false;
+        return sealed;
+    }
+
+    /**
+     * Deletes every segment up to and including the given one. Only call this once a
+     * snapshot containing their records has been written.
+     */
+    public synchronized void deleteSegmentsThrough(long segment) {
+        for (long existing : listSegments()) {
+            if (existing <= segment && !segmentFile(existing).delete()) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                    .log("Failed to delete journal segment %d", existing);
+            }
+        }
+    }
+
+    /**
+     * Replays every segment on disk in order.
+     *
+     * @return the number of records replayed
+     */
+    public int replay(@Nonnull ReplayHandler handler) {
+        int records = 0;
+
+        for (long segment : listSegments()) {
+            if (segment == activeSegment) {
+                continue;
+            }
+
+            File file = segmentFile(segment);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int op;
+                    try {
+                        op = in.readByte();
+                    } catch (EOFException e) {
+                        break;
+                    }
+
+                    switch (op) {
+                        case OP_MACHINE_ECHOES -> handler.machineEchoes(in.readUTF(), in.readLong());
+                        case OP_MACHINE_DISCOVER -> handler.machineDiscover(in.readUTF(), in.readUTF());
+                        case OP_MACHINE_UPGRADE -> handler.machineUpgrade(in.readUTF(), in.readUTF(), in.readInt());
+                        case OP_MACHINE_REMOVE -> handler.machineRemove(in.readUTF());
+                        case OP_PLAYER_DISCOVER -> handler.playerDiscover(new UUID(in.readLong(), in.readLong()), in.readUTF());
+                        default -> throw new IOException("Unknown journal record type " + op);
+                    }
+                    records++;
+                }
+            } catch (EOFException e) {
+                // A crash mid-append leaves a torn final record; everything before it is intact
+                EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                    .log("Journal segment %d ends with a partial record, ignoring it", segment);
+            } catch (IOException e) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                    .log("Failed to replay journal segment " + segment + ": " + e.getMessage());
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * @return the highest segment number on disk, or -1 if there are none
+     */
+    public long getLastSegment() {
+        List<Long> segments = listSegments();
+        return segments.isEmpty() ? -1 : segments.get(segments.size() - 1);
+    }
+
+    public synchronized void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                .log("Failed to close journal: " + e.getMessage());
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        segmentStream = new FileOutputStream(segmentFile(segment), true);
+        out = new DataOutputStream(new BufferedOutputStream(segmentStream, 64 * 1024));
+        activeSegment = segment;
+    }
+
+    private void closeSegment() throws IOException {
+        if (out == null) {
+            return;
+        }
+
+        out.flush();
+        segmentStream.getChannel().force(false);
+        out.close();
+        hasUnflushedRecords = false;
+        out = null;
+        segmentStream = null;
+    }
+
+    private boolean isWritable() {
+        if (out == null) {
+            // Segment failed to open; the next checkpoint snapshots the change instead
+            checkpointRequested = true;
+            return false;
+        }
+        hasUnflushedRecords = true;
+        return true;
+    }
+
+    private void onAppendFailed(@Nonnull IOException e) {
+        // Fall back to a full snapshot on the next tick so the change is not lost
+        checkpointRequested = true;
+        EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+            .log("Failed to append to journal: " + e.getMessage());
+    }
+
+    @Nonnull
+    private File segmentFile(long segment) {
+        return new File(journalFolder, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    @Nonnull
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        File[] files = journalFolder.listFiles();
+        if (files == null) {
+            return segments;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+
+        segments.sort(Long::compare);
+        return segments;
+    }
+
+    /**
+     * Receives journal records during replay.
+     */
+    public interface ReplayHandler {
+        void machineEchoes(@Nonnull String key, long echoes);
+
+        void machineDiscover(@Nonnull String key, @Nonnull String itemId);
+
+        void machineUpgrade(@Nonnull String key, @Nonnull String itemId, int progress);
+
+        void machineRemove(@Nonnull String key);
+
+        void playerDiscover(@Nonnull UUID playerUuid, @Nonnull String itemId);
+    }
+}
@@ -0,0 +1,73 @@
+package com.echoexchange.storage;
+
+import com.hypixel.hytale.math.vector.Vector3i;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Packs block positions into a single {@code long} (26 bits X, 26 bits Z, 12 bits Y, all signed)
+ * and converts to and from the {@code "world:x,y,z"} keys used on disk.
+ */
+public final class MachinePosition {
+
+    private static final int MAX_HORIZONTAL = (1 << 25) - 1;
+    private static final int MAX_VERTICAL = (1 << 11) - 1;
+
+    private MachinePosition() {
+    }
+
+    public static long pack(@Nonnull Vector3i position) {
+        return pack(position.x, position.y, position.z);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a coordinate does not fit its bits and would wrap onto another position
+     */
+    public static long pack(int x, int y, int z) {
+        if (x < -MAX_HORIZONTAL - 1 || x > MAX_HORIZONTAL || z < -MAX_HORIZONTAL - 1 || z > MAX_HORIZONTAL
+            || y < -MAX_VERTICAL - 1 || y > MAX_VERTICAL) {
+            throw new IllegalArgumentException("Machine position out of range: " + x + "," + y + "," + z);
+        }
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    @Nonnull
+    public static String toKey(@Nonnull String worldName, long packed) {
+        return worldName + ":" + unpackX(packed) + "," + unpackY(packed) + "," + unpackZ(packed);
+    }
+
+    @Nonnull
+    public static String parseWorld(@Nonnull String key) {
+        int separator = key.lastIndexOf(':');
+        return separator >= 0 ? key.substring(0, separator) : "unknown";
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is not in {@code "world:x,y,z"} form
+     */
+    public static long parsePosition(@Nonnull String key) {
+        int separator = key.lastIndexOf(':');
+        String[] parts = key.substring(separator + 1).split(",");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed machine key: " + key);
+        }
+
+        try {
+            return pack(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed machine key: " + key, e);
+        }
+    }
+}
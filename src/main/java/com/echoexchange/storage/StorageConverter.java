@@ -0,0 +1,302 @@
+package com.echoexchange.storage;
+
+import com.echoexchange.EchoExchangePlugin;
+import com.echoexchange.config.EchoExchangeConfig.StorageFormat;
+import com.hypixel.hytale.codec.util.RawJsonReader;
+import com.hypixel.hytale.server.core.util.BsonUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes the storage files in either {@link StorageFormat}, and converts
+ * existing files between them.
+ * <p>
+ * Writes never touch the live file directly: data goes to a temporary file which is
+ * synced and then atomically renamed over the live one. Machine files keep their previous
+ * versions as numbered backup generations ({@code world.json.1} being the newest); per-player
+ * discovery files are small and many, so they keep none.
+ */
+public final class StorageConverter {
+
+    public static final String MACHINES_FOLDER = "machines";
+    public static final String DISCOVERIES_FOLDER = "discoveries";
+    public static final String DISCOVERIES_FILE = "player_discoveries";
+
+    private StorageConverter() {
+    }
+
+    @Nonnull
+    public static String getExtension(@Nonnull StorageFormat format) {
+        return format == StorageFormat.Binary ? ".bin" : ".json";
+    }
+
+    @Nullable
+    public static ExchangeMachineManager.MachineStorage readMachines(@Nonnull File file, @Nonnull StorageFormat format) throws IOException {
+        return readWithBackups(file, getMachineGenerations(), path -> {
+            if (format == StorageFormat.Binary) {
+                try (InputStream in = Files.newInputStream(path)) {
+                    return BinaryStorageCodec.readMachines(in);
+                }
+            }
+            return RawJsonReader.readSync(path, ExchangeMachineManager.MachineStorage.CODEC,
+                EchoExchangePlugin.getInstance().getLogger());
+        });
+    }
+
+    public static void writeMachines(@Nonnull File file, @Nonnull StorageFormat format,
+                                     @Nonnull ExchangeMachineManager.MachineStorage storage) throws IOException {
+        writeAtomically(file, getMachineGenerations(), temp -> {
+            if (format == StorageFormat.Binary) {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    BinaryStorageCodec.writeMachines(out, storage);
+                }
+                return;
+            }
+            BsonUtil.writeSync(temp, ExchangeMachineManager.MachineStorage.CODEC, storage,
+                EchoExchangePlugin.getInstance().getLogger());
+        });
+    }
+
+    @Nullable
+    public static ExchangeMachineManager.PlayerDiscoveriesStorage readDiscoveries(@Nonnull File file, @Nonnull StorageFormat format) throws IOException {
+        return readWithBackups(file, 0, path -> {
+            if (format == StorageFormat.Binary) {
+                try (InputStream in = Files.newInputStream(path)) {
+                    return BinaryStorageCodec.readDiscoveries(in);
+                }
+            }
+            return RawJsonReader.readSync(path, ExchangeMachineManager.PlayerDiscoveriesStorage.CODEC,
+                EchoExchangePlugin.getInstance().getLogger());
+        });
+    }
+
+    /**
+     * Reads the live file, falling back to the newest backup generation that reads cleanly.
+     *
+     * @throws IOException the live file's error, if no generation could be read
+     */
+    @Nullable
+    static <T> T readWithBackups(@Nonnull File file, int generations, @Nonnull FileReader<T> reader) throws IOException {
+        Path target = file.toPath();
+        IOException failure;
+        try {
+            return reader.read(target);
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+
+        for (int generation = 1; generation <= generations; generation++) {
+            Path backup = target.resolveSibling(file.getName() + "." + generation);
+            if (!Files.exists(backup)) {
+                continue;
+            }
+
+            try {
+                T value = reader.read(backup);
+                EchoExchangePlugin.getInstance().getLogger().at(Level.WARNING)
+                    .log("Could not read " + file.getName() + " (" + failure.getMessage() + "), recovered from backup " + backup.getFileName());
+                return value;
+            } catch (IOException | RuntimeException e) {
+                // Try the next older generation
+            }
+        }
+
+        throw failure;
+    }
+
+    public static void writeDiscoveries(@Nonnull File file, @Nonnull StorageFormat format,
+                                        @Nonnull ExchangeMachineManager.PlayerDiscoveriesStorage storage) throws IOException {
+        writeAtomically(file, 0, temp -> {
+            if (format == StorageFormat.Binary) {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    BinaryStorageCodec.writeDiscoveries(out, storage);
+                }
+                return;
+            }
+            BsonUtil.writeSync(temp, ExchangeMachineManager.PlayerDiscoveriesStorage.CODEC, storage,
+                EchoExchangePlugin.getInstance().getLogger());
+        });
+    }
+
+    private static int getMachineGenerations() {
+        return EchoExchangePlugin.getInstance().getModConfig().getBackupGenerations();
+    }
+
+    static void writeAtomically(@Nonnull File file, int generations, @Nonnull FileWriter writer) throws IOException {
+        Path target = file.toPath();
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        Path temp = directory.resolve(file.getName() + ".tmp");
+        Files.deleteIfExists(temp);
+        writer.write(temp);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        rotateGenerations(target, generations);
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Make the rename itself durable; not every platform allows syncing a directory
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    /**
+     * Shifts file.1 .. file.(n-1) up one and makes the live file file.1. That is a second hard link
+     * rather than a copy, so no data is rewritten and the live name stays in place until the atomic
+     * rename replaces it; where links are not supported the live file is renamed instead.
+     */
+    private static void rotateGenerations(@Nonnull Path target, int generations) throws IOException {
+        if (generations <= 0 || !Files.exists(target)) {
+            return;
+        }
+
+        String name = target.getFileName().toString();
+        Files.deleteIfExists(target.resolveSibling(name + "." + generations));
+        for (int generation = generations - 1; generation >= 1; generation--) {
+            Path older = target.resolveSibling(name + "." + generation);
+            if (Files.exists(older)) {
+                Files.move(older, target.resolveSibling(name + "." + (generation + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Path newest = target.resolveSibling(name + ".1");
+        Files.deleteIfExists(newest);
+        try {
+            Files.createLink(newest, target);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.move(target, newest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the backup generations kept next to a file, for when the file itself is replaced by a conversion.
+     */
+    private static void deleteGenerations(@Nonnull File file) throws IOException {
+        String pattern = Pattern.quote(file.getName()) + "\\.\\d+";
+        File[] backups = file.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.matches(pattern));
+        if (backups == null) {
+            return;
+        }
+        for (File backup : backups) {
+            Files.deleteIfExists(backup.toPath());
+        }
+    }
+
+    public static void convertMachines(@Nonnull File source, @Nonnull StorageFormat sourceFormat,
+                                       @Nonnull File target, @Nonnull StorageFormat targetFormat) throws IOException {
+        ExchangeMachineManager.MachineStorage storage = readMachines(source, sourceFormat);
+        if (storage == null) {
+            throw new IOException("Could not read " + source.getName());
+        }
+        writeMachines(target, targetFormat, storage);
+    }
+
+    public static void convertDiscoveries(@Nonnull File source, @Nonnull StorageFormat sourceFormat,
+                                          @Nonnull File target, @Nonnull StorageFormat targetFormat) throws IOException {
+        ExchangeMachineManager.PlayerDiscoveriesStorage storage = readDiscoveries(source, sourceFormat);
+        if (storage == null) {
+            throw new IOException("Could not read " + source.getName());
+        }
+        writeDiscoveries(target, targetFormat, storage);
+    }
+
+    /**
+     * Converts every storage file in the data folder that is not yet in the target format.
+     * Source files and their backup generations are only deleted once the converted copy has been written.
+     *
+     * @return the number of files converted
+     */
+    public static int convertAll(@Nonnull File dataFolder, @Nonnull StorageFormat targetFormat) {
+        StorageFormat sourceFormat = targetFormat == StorageFormat.Binary ? StorageFormat.Json : StorageFormat.Binary;
+        String sourceExtension = getExtension(sourceFormat);
+        String targetExtension = getExtension(targetFormat);
+        int converted = 0;
+
+        File[] machineFiles = new File(dataFolder, MACHINES_FOLDER).listFiles((dir, name) -> name.endsWith(sourceExtension));
+        if (machineFiles != null) {
+            for (File source : machineFiles) {
+                File target = replaceExtension(source, sourceExtension, targetExtension);
+                try {
+                    convertMachines(source, sourceFormat, target, targetFormat);
+                    Files.delete(source.toPath());
+                    deleteGenerations(source);
+                    converted++;
+                } catch (IOException | RuntimeException e) {
+                    EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                        .log("Failed to convert " + source.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        File[] discoveryFiles = new File(dataFolder, DISCOVERIES_FOLDER).listFiles((dir, name) -> name.endsWith(sourceExtension));
+        if (discoveryFiles != null) {
+            for (File source : discoveryFiles) {
+                File target = replaceExtension(source, sourceExtension, targetExtension);
+                try {
+                    convertDiscoveries(source, sourceFormat, target, targetFormat);
+                    Files.delete(source.toPath());
+                    deleteGenerations(source);
+                    converted++;
+                } catch (IOException | RuntimeException e) {
+                    EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                        .log("Failed to convert " + source.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        File discoveriesSource = new File(dataFolder, DISCOVERIES_FILE + sourceExtension);
+        if (discoveriesSource.exists()) {
+            try {
+                convertDiscoveries(discoveriesSource, sourceFormat, new File(dataFolder, DISCOVERIES_FILE + targetExtension), targetFormat);
+                Files.delete(discoveriesSource.toPath());
+                deleteGenerations(discoveriesSource);
+                converted++;
+            } catch (IOException | RuntimeException e) {
+                EchoExchangePlugin.getInstance().getLogger().at(Level.SEVERE)
+                    .log("Failed to convert " + discoveriesSource.getName() + ": " + e.getMessage());
+            }
+        }
+
+        return converted;
+    }
+
+    @Nonnull
+    private static File replaceExtension(@Nonnull File file, @Nonnull String from, @Nonnull String to) {
+        String name = file.getName();
+        return new File(file.getParentFile(), name.substring(0, name.length() - from.length()) + to);
+    }
+
+    @FunctionalInterface
+    interface FileReader<T> {
+        @Nullable
+        T read(@Nonnull Path path) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface FileWriter {
+        void write(@Nonnull Path path) throws IOException;
+    }
+}
@@ -2,7 +2,9 @@ package com.echoexchange.ui;
 
 import com.echoexchange.EchoExchangePlugin;
 import com.echoexchange.echo.EchoValueCalculator;
+import com.echoexchange.echo.EchoValueTable;
 import com.echoexchange.storage.ExchangeMachineManager;
+import com.echoexchange.storage.MachinePosition;
 import com.hypixel.hytale.codec.Codec;
 import com.hypixel.hytale.codec.KeyedCodec;
 import com.hypixel.hytale.codec.builder.BuilderCodec;
@@ -31,6 +33,7 @@ import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import com.hypixel.hytale.server.core.asset.type.blocktype.config.BlockType;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.logging.Level;
 
 public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachinePage.ExchangeMachinePageData> {
@@ -38,17 +41,40 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
     private final ItemContainerState containerState;
     private final Vector3i blockPosition;
     private final String worldName;
-    private String searchText = "";
+    private final String machineKey;
+    private final SearchDebouncer searchDebouncer = new SearchDebouncer();
+    // Cached search text and derived views for as long as the page is open
+    private final PageSession session;
+    // What the client was last sent, so updates after an action only carry what changed
+    private final UiStateModel sentState = new UiStateModel();
+    // Item each discovered grid slot shows, "" for padding; clicks are resolved against it. Null until the grid is built
+    private String[] gridItemIds = null;
+    // Every discovered item matching the search, in display order; only one page of it is sent
+    private java.util.List<PageSession.DiscoveredItem> discoveredView = java.util.Collections.emptyList();
+    private int gridPage = 0;
+    // Inputs of what the client last saw; a refresh skips sections whose inputs are unchanged
+    private long renderedDataVersion = -1;
+    private long renderedDiscoveryVersion = -1;
+    private long renderedInventoryVersion = -1;
+    private EchoValueTable renderedValueTable;
+    // The viewer this page was last built for; other viewers' changes are pushed through it
+    private Ref<EntityStore> viewerRef;
+    private Store<EntityStore> viewerStore;
+    // Set once a redraw is queued for the end of the value warm-up, so rebuilds do not queue another
+    private boolean waitingForValues = false;
+    private boolean dismissed = false;
     private boolean scribbleToggle = false;
-
+    
     public ExchangeMachinePage(@Nonnull PlayerRef playerRef, @Nonnull ItemContainerState containerState) {
         super(playerRef, CustomPageLifetime.CanDismissOrCloseThroughInteraction, ExchangeMachinePageData.CODEC);
         this.containerState = containerState;
         this.blockPosition = containerState.getBlockPosition();
+        this.session = new PageSession(playerRef.getUuid());
         this.worldName = containerState.getChunk() != null ? 
             containerState.getChunk().getWorld().getName() : "unknown";
+        this.machineKey = MachinePosition.toKey(worldName, MachinePosition.pack(blockPosition));
     }
-
+    
     @Override
     public void handleDataEvent(Ref<EntityStore> ref, Store<EntityStore> store, ExchangeMachinePageData data) {
         Player player = store.getComponent(ref, Player.getComponentType());
@@ -56,25 +82,31 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         
         Inventory inventory = player.getInventory();
         ExchangeMachineManager.MachineData machineData = 
-            ExchangeMachineManager.getInstance().getMachineData(worldName, blockPosition);
+            ExchangeMachineManager.getInstance().viewMachineData(worldName, blockPosition);
+        long versionBefore = machineData.getVersion();
         
         String action = data.action;
         
         if ((action == null || action.isEmpty()) && data.searchText != null) {
-            searchText = data.searchText.toLowerCase();
-            
-            ExchangeMachineManager.getInstance().setPlayerSearchQuery(player.getUuid(), searchText);
-            
-            UICommandBuilder commands = new UICommandBuilder();
-            UIEventBuilder events = new UIEventBuilder();
-            buildDiscoveredItemsGrid(commands, events, player, machineData);
-            sendUpdate(commands, events, false);
+            // Typing sends an event per character; only the last one of a burst rebuilds the grid
+            searchDebouncer.submit(data.searchText.toLowerCase(), store.getExternalData().getWorld(),
+                text -> applySearch(ref, store, text));
             return;
         }
         
         // If no action, nothing else to do
         if (action == null || action.isEmpty()) return;
         
+        if (action.equals("page_prev") || action.equals("page_next")) {
+            // Paging re-slices the list already built for the current search
+            gridPage += action.equals("page_next") ? 1 : -1;
+            UICommandBuilder commands = new UICommandBuilder();
+            UIEventBuilder events = new UIEventBuilder();
+            buildGridPage(commands, events, machineData.getStoredEchoes());
+            sendUpdate(commands, events, false);
+            return;
+        }
+        
         if (action.startsWith("burn_inventory:")) {
             int slot = Integer.parseInt(action.substring("burn_inventory:".length()));
             ItemStack stack = inventory.getStorage().getItemStack((short) slot);
@@ -100,7 +132,9 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
                 handleBurnItem(player, inventory, machineData, inventory.getHotbar(), (short) slot, stack.getItemId(), 1);
             }
         } else if (action.startsWith("transmute_max:")) {
-            String itemId = action.substring("transmute_max:".length());
+            String itemId = getGridItemId(Integer.parseInt(action.substring("transmute_max:".length())));
+            if (itemId.isEmpty()) return;
+            
             // Get the item's max stack size
             Item item = Item.getAssetMap().getAsset(itemId);
             int maxStack = item != null ? item.getMaxStack() : 64;
@@ -114,15 +148,76 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
                 handleTransmuteItem(player, inventory, machineData, itemId, quantity);
             }
         } else if (action.startsWith("transmute_one:")) {
-            String itemId = action.substring("transmute_one:".length());
+            String itemId = getGridItemId(Integer.parseInt(action.substring("transmute_one:".length())));
+            if (itemId.isEmpty()) return;
             handleTransmuteItem(player, inventory, machineData, itemId, 1);
         } else if (action.startsWith("upgrade_click:")) {
             int slotIndex = Integer.parseInt(action.substring("upgrade_click:".length()));
             handleUpgradeClick(inventory, machineData, slotIndex);
         }
         
-        // Rebuild UI to reflect changes
-        rebuild();
+        // Send only what the action changed; a change may have created or dropped the machine's entry
+        machineData = ExchangeMachineManager.getInstance().viewMachineData(worldName, blockPosition);
+        sendChanges(player, inventory, machineData);
+        
+        // Anyone else looking at this machine catches up on the next push
+        if (machineData.getVersion() != versionBefore) {
+            MachineViewerRegistry.getInstance().machineChanged(machineKey, store.getExternalData().getWorld());
+        }
+    }
+    
+    /**
+     * Brings this page up to date after another viewer changed the machine. Runs on the world thread.
+     */
+    void pushMachineChanges() {
+        if (dismissed || viewerRef == null || !viewerRef.isValid()) return;
+        Player player = viewerStore.getComponent(viewerRef, Player.getComponentType());
+        if (player == null) return;
+        
+        ExchangeMachineManager.MachineData machineData = 
+            ExchangeMachineManager.getInstance().viewMachineData(worldName, blockPosition);
+        sendChanges(player, player.getInventory(), machineData);
+    }
+    
+    /**
+     * Updates the balance, grid, inventory and upgrade panel against what the client already has,
+     * instead of rebuilding the whole page.
+     */
+    private void sendChanges(@Nonnull Player player, @Nonnull Inventory inventory,
+                             @Nonnull ExchangeMachineManager.MachineData machineData) {
+        long dataVersion = machineData.getVersion();
+        long discoveryVersion = ExchangeMachineManager.getInstance().getPlayerDiscoveries(player.getUuid()).getVersion();
+        long inventoryVersion = session.getInventoryVersion(inventory);
+        EchoValueTable valueTable = EchoValueCalculator.getInstance().getValueTable();
+        boolean dataChanged = dataVersion != renderedDataVersion;
+        boolean valuesChanged = valueTable != renderedValueTable;
+        
+        UICommandBuilder commands = new UICommandBuilder();
+        UIEventBuilder events = new UIEventBuilder();
+        if (dataChanged) {
+            updateEchoDisplay(commands, machineData);
+        }
+        if (dataChanged || valuesChanged || discoveryVersion != renderedDiscoveryVersion) {
+            buildDiscoveredItemsGrid(commands, events, machineData);
+        }
+        if (dataChanged || valuesChanged || inventoryVersion != renderedInventoryVersion) {
+            updatePlayerInventory(commands, inventory, machineData);
+            updateInfoPanel(commands, inventory, machineData);
+        }
+        markRendered(dataVersion, discoveryVersion, inventoryVersion, valueTable);
+        sendUpdate(commands, events, false);
+    }
+    
+    /**
+     * Records the inputs a render is based on. They are read before rendering, so a change
+     * made in the meantime still differs on the next refresh.
+     */
+    private void markRendered(long dataVersion, long discoveryVersion, long inventoryVersion,
+                              @Nonnull EchoValueTable valueTable) {
+        renderedDataVersion = dataVersion;
+        renderedDiscoveryVersion = discoveryVersion;
+        renderedInventoryVersion = inventoryVersion;
+        renderedValueTable = valueTable;
     }
     
     private void handleBurnItem(@Nonnull Player player, @Nonnull Inventory inventory, @Nonnull ExchangeMachineManager.MachineData machineData,
@@ -188,16 +283,14 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         container.removeItemStackFromSlot(slot, quantity);
         
         // Add Echoes to machine
-        machineData.addEchoes(totalEchoes);
+        long burnedEchoes = totalEchoes;
+        ExchangeMachineManager.getInstance().updateMachineData(worldName, blockPosition, data -> data.addEchoes(burnedEchoes));
         
         // Discover the item (only for normal items, not scrolls) - stored per-player
         if (!itemId.equals("EchoScroll")) {
             ExchangeMachineManager.getInstance().discoverItemForPlayer(player.getUuid(), itemId);
         }
         
-        // Mark data as dirty for saving
-        ExchangeMachineManager.getInstance().markDirty();
-        
         // Trigger scribble animation
         triggerScribbleAnimation();
         
@@ -247,10 +340,8 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         }
         
         // Remove Echoes from machine
-        machineData.removeEchoes(totalCost);
-        
-        // Mark data as dirty for saving
-        ExchangeMachineManager.getInstance().markDirty();
+        long spentEchoes = totalCost;
+        ExchangeMachineManager.getInstance().updateMachineData(worldName, blockPosition, data -> data.removeEchoes(spentEchoes));
         
         // Trigger scribble animation
         triggerScribbleAnimation();
@@ -258,7 +349,7 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
             .log("Player transmuted %d x %s for %d Echoes", quantity, itemId, totalCost);
     }
-
+    
     private void triggerScribbleAnimation() {
         WorldChunk chunk = containerState.getChunk();
         if (chunk == null) return;
@@ -271,15 +362,50 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         String state = scribbleToggle ? "Scribbling1" : "Scribbling2";
         world.setBlockInteractionState(blockPosition, blockType, state);
     }
-
+    
+    @Override
+    public void onDismiss(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store) {
+        super.onDismiss(ref, store);
+        dismissed = true;
+        searchDebouncer.cancel();
+        MachineViewerRegistry.getInstance().unregister(machineKey, this);
+        session.release();
+    }
+    
+    private void applySearch(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store, @Nonnull String text) {
+        if (!ref.isValid()) return;
+        Player player = store.getComponent(ref, Player.getComponentType());
+        if (player == null) return;
+        
+        session.setSearchText(text);
+        gridPage = 0;
+        
+        ExchangeMachineManager.MachineData machineData = 
+            ExchangeMachineManager.getInstance().viewMachineData(worldName, blockPosition);
+        UICommandBuilder commands = new UICommandBuilder();
+        UIEventBuilder events = new UIEventBuilder();
+        buildDiscoveredItemsGrid(commands, events, machineData);
+        sendUpdate(commands, events, false);
+    }
+    
     @Override
     public void build(@Nonnull Ref<EntityStore> ref, @Nonnull UICommandBuilder commands,
                      @Nonnull UIEventBuilder events, @Nonnull Store<EntityStore> store) {
         Player player = store.getComponent(ref, Player.getComponentType());
         if (player == null) return;
         
-        if (searchText.isEmpty()) {
-            searchText = ExchangeMachineManager.getInstance().getPlayerSearchQuery(player.getUuid());
+        // The client starts from a fresh page
+        sentState.reset();
+        gridItemIds = null;
+        viewerRef = ref;
+        viewerStore = store;
+        MachineViewerRegistry.getInstance().register(machineKey, this);
+        
+        // During the warm-up the grid lists only valued items; redraw it once every item has a value
+        if (!waitingForValues && !EchoValueCalculator.getInstance().isReady()) {
+            waitingForValues = true;
+            World world = store.getExternalData().getWorld();
+            EchoValueCalculator.getInstance().whenReady(() -> world.execute(this::pushMachineChanges));
         }
         
         // Load the UI from the UI file
@@ -287,161 +413,185 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         
         // Get machine data
         ExchangeMachineManager.MachineData machineData = 
-            ExchangeMachineManager.getInstance().getMachineData(worldName, blockPosition);
+            ExchangeMachineManager.getInstance().viewMachineData(worldName, blockPosition);
         
-        // Update Echo display
-        long currentEchoes = machineData.getStoredEchoes();
-        long maxCapacity = machineData.getMaxCapacity();
-        double progressPercent = maxCapacity > 0 ? ((double) currentEchoes / maxCapacity) : 0.0;
-        
-        // Update labels with current values using set() with selector.Property syntax
-        commands.set("#EchoBalanceLabel.Text", "Echoes: " + formatNumberWithCommas(currentEchoes) + " / " + formatNumberWithCommas(maxCapacity));
+        Inventory inventory = player.getInventory();
+        markRendered(machineData.getVersion(),
+            ExchangeMachineManager.getInstance().getPlayerDiscoveries(player.getUuid()).getVersion(),
+            session.getInventoryVersion(inventory), EchoValueCalculator.getInstance().getValueTable());
         
-        // Update progress bar value (0.0 to 1.0)
-        commands.set("#EchoProgressBar.Value", progressPercent);
+        // Update Echo display
+        updateEchoDisplay(commands, machineData);
         
         // Build discovered items section (includes search field and grid)
-        buildDiscoveredItems(commands, events, player, machineData);
+        buildDiscoveredItems(commands, events, machineData);
         
         // Build player inventory
-        Inventory inventory = player.getInventory();
         buildPlayerInventory(commands, events, inventory, machineData);
         
         // Build info panel with upgrades
         buildInfoPanel(commands, events, inventory, machineData);
     }
     
+    /**
+     * Sets the balance label and progress bar.
+     */
+    private void updateEchoDisplay(@Nonnull UICommandBuilder commands, @Nonnull ExchangeMachineManager.MachineData machineData) {
+        long currentEchoes = machineData.getStoredEchoes();
+        long maxCapacity = machineData.getMaxCapacity();
+        double progressPercent = maxCapacity > 0 ? ((double) currentEchoes / maxCapacity) : 0.0;
+        
+        // Update labels with current values using set() with selector.Property syntax
+        sentState.set(commands, "#EchoBalanceLabel.Text", "Echoes: " + formatNumberWithCommas(currentEchoes) + " / " + formatNumberWithCommas(maxCapacity));
+        
+        // Update progress bar value (0.0 to 1.0)
+        sentState.set(commands, "#EchoProgressBar.Value", progressPercent);
+    }
+    
     /**
      * Builds the discovered items grid.
      */
     private void buildDiscoveredItems(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
-                                      @Nonnull Player player, @Nonnull ExchangeMachineManager.MachineData machineData) {
+                                      @Nonnull ExchangeMachineManager.MachineData machineData) {
         // Set up search field
-        commands.set("#SearchInput.Value", searchText);
+        commands.set("#SearchInput.Value", session.getSearchText());
         events.addEventBinding(
                 CustomUIEventBindingType.ValueChanged,
                 "#SearchInput",
                 EventData.of("@SearchText", "#SearchInput.Value"),
                 false
         );
+        events.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                "#PrevPageButton",
+                EventData.of("Action", "page_prev"),
+                false
+        );
+        events.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                "#NextPageButton",
+                EventData.of("Action", "page_next"),
+                false
+        );
         
         // Build the grid content
-        buildDiscoveredItemsGrid(commands, events, player, machineData);
+        buildDiscoveredItemsGrid(commands, events, machineData);
     }
     
     /**
      * Builds only the discovered items grid content (for partial updates during search).
      */
     private void buildDiscoveredItemsGrid(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
-                                          @Nonnull Player player, @Nonnull ExchangeMachineManager.MachineData machineData) {
-        commands.clear("#DiscoveredItemsGrid");
-        
-        java.util.Set<String> discoveredItems = ExchangeMachineManager.getInstance().getPlayerDiscoveredItems(player.getUuid());
-        if (discoveredItems.isEmpty()) {
-            // No items discovered - the static label in UI will show
-            return;
-        }
-        
+                                          @Nonnull ExchangeMachineManager.MachineData machineData) {
         long currentEchoes = machineData.getStoredEchoes();
+        discoveredView = session.getDiscoveredView(playerRef.getLanguage(), currentEchoes);
+        buildGridPage(commands, events, currentEchoes);
+    }
+    
+    /**
+     * Sends the current page of the discovered list. Only this window of slots exists on the
+     * client, so the payload is bounded by the page size rather than by the discovery count.
+     * Slots are only re-created when the padded slot count changes; otherwise each slot
+     * gets just the properties that differ from what it was last sent.
+     */
+    private void buildGridPage(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events, long currentEchoes) {
+        int pageSize = Math.max(1, EchoExchangePlugin.getInstance().getModConfig().getDiscoveredPageRows()) * 9;
+        int pageCount = PageSession.pageCount(discoveredView.size(), pageSize);
+        gridPage = PageSession.clampPage(gridPage, discoveredView.size(), pageSize);
+        java.util.List<PageSession.DiscoveredItem> sortedItems = PageSession.pageOf(discoveredView, gridPage, pageSize);
         
-        // Filter and sort discovered items
-        java.util.List<String> sortedItems = new java.util.ArrayList<>(discoveredItems);
+        sentState.set(commands, "#DiscoveredPager.Visible", pageCount > 1);
+        sentState.set(commands, "#PageLabel.Text", "Page " + (gridPage + 1) + " / " + pageCount);
         
-        // Apply search filter
-        if (!searchText.isEmpty()) {
-            sortedItems.removeIf(itemId -> {
-                String itemName = getItemName(itemId).toLowerCase();
-                return !itemName.contains(searchText) && !itemId.toLowerCase().contains(searchText);
-            });
+        // Fill remaining slots to make a multiple of 9
+        int slotCount = (sortedItems.size() + 8) / 9 * 9;
+        if (gridItemIds == null || gridItemIds.length != slotCount) {
+            // With no items discovered the grid stays empty and the static label in UI will show
+            commands.clear("#DiscoveredItemsGrid");
+            sentState.forget("#DiscoveredItemsGrid[");
+            for (int slotIndex = 0; slotIndex < slotCount; slotIndex++) {
+                String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
+                commands.append("#DiscoveredItemsGrid", "Pages/SimpleStorageSlot.ui");
+                
+                // Hide hotbar number
+                commands.set(selector + " #HotbarNumberBg.Visible", false);
+                bindTransmuteEvents(events, slotIndex);
+            }
+            gridItemIds = new String[slotCount];
         }
         
-        sortedItems.sort((item1, item2) -> {
-            int value1 = EchoValueCalculator.getInstance().getEchoValue(item1);
-            int value2 = EchoValueCalculator.getInstance().getEchoValue(item2);
-            boolean canAfford1 = value1 <= currentEchoes;
-            boolean canAfford2 = value2 <= currentEchoes;
-            
-            // Affordable items come first
-            if (canAfford1 != canAfford2) {
-                return canAfford1 ? -1 : 1;
+        for (int slotIndex = 0; slotIndex < slotCount; slotIndex++) {
+            String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
+            if (slotIndex >= sortedItems.size()) {
+                gridItemIds[slotIndex] = "";
+                sentState.set(commands, selector + " #SlotItem.ItemId", "");
+                sentState.set(commands, selector + " #QuantityLabel.Visible", false);
+                sentState.set(commands, selector + " #EchoesLabel.Visible", false);
+                sentState.set(commands, selector + " #UnaffordableOverlay.Visible", false);
+                sentState.set(commands, selector + ".TooltipTextSpans", "", Message::empty);
+                continue;
             }
             
-            // Within same affordability, sort by echo value (high to low)
-            return Integer.compare(value2, value1);
-        });
-        
-        // Build discovered item slots
-        int slotIndex = 0;
-        for (String itemId : sortedItems) {
-            String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
-            int echoValue = EchoValueCalculator.getInstance().getEchoValue(itemId);
+            PageSession.DiscoveredItem discoveredItem = sortedItems.get(slotIndex);
+            String itemId = discoveredItem.getItemId();
+            int echoValue = discoveredItem.getEchoValue();
             boolean canAfford = echoValue <= currentEchoes;
-            
-            commands.append("#DiscoveredItemsGrid", "Pages/SimpleStorageSlot.ui");
+            gridItemIds[slotIndex] = itemId;
             
             // Set item icon
-            commands.set(selector + " #SlotItem.ItemId", itemId);
+            sentState.set(commands, selector + " #SlotItem.ItemId", itemId);
             
             // Show quantity (how many can be transmuted)
-            if (canAfford && echoValue > 0) {
-                int maxQuantity = (int) (currentEchoes / echoValue);
-                if (maxQuantity > 0) {
-                    commands.set(selector + " #QuantityLabel.Text", abbreviateNumber(maxQuantity));
-                    commands.set(selector + " #QuantityLabel.Visible", true);
-                } else {
-                    commands.set(selector + " #QuantityLabel.Visible", false);
-                }
-            } else {
-                commands.set(selector + " #QuantityLabel.Visible", false);
+            int maxQuantity = canAfford && echoValue > 0 ? (int) (currentEchoes / echoValue) : 0;
+            if (maxQuantity > 0) {
+                sentState.set(commands, selector + " #QuantityLabel.Text", abbreviateNumber(maxQuantity));
             }
+            sentState.set(commands, selector + " #QuantityLabel.Visible", maxQuantity > 0);
             
             // Show cost label in bottom-left (purple if affordable, grey if not)
-            commands.set(selector + " #EchoesLabel.Visible", true);
-            commands.set(selector + " #EchoesLabel.Text", formatQuantity(echoValue));
-            commands.set(selector + " #EchoesLabel.Style.TextColor", canAfford ? "#a78bfa" : "#9ca3af");
+            sentState.set(commands, selector + " #EchoesLabel.Visible", true);
+            sentState.set(commands, selector + " #EchoesLabel.Text", formatQuantity(echoValue));
+            sentState.set(commands, selector + " #EchoesLabel.Style.TextColor", canAfford ? "#a78bfa" : "#9ca3af");
             
             // Show overlay for unaffordable items
-            commands.set(selector + " #UnaffordableOverlay.Visible", !canAfford);
-            
-            // Hide hotbar number
-            commands.set(selector + " #HotbarNumberBg.Visible", false);
+            sentState.set(commands, selector + " #UnaffordableOverlay.Visible", !canAfford);
             
             // Set tooltip with Echo value
-            commands.set(selector + ".TooltipTextSpans", getItemTooltipWithEchoes(itemId, echoValue, 1));
-            
-            // Add click handlers for transmutation
-            // Left click: transmute full stack (64)
-            events.addEventBinding(
-                    CustomUIEventBindingType.Activating,
-                    selector,
-                    EventData.of("Action", "transmute_max:" + itemId),
-                    false
-            );
-            
-            // Right click: transmute one
-            events.addEventBinding(
-                    CustomUIEventBindingType.RightClicking,
-                    selector,
-                    EventData.of("Action", "transmute_one:" + itemId),
-                    false
-            );
-            
-            slotIndex++;
+            sentState.set(commands, selector + ".TooltipTextSpans", itemId + "|" + echoValue,
+                () -> session.getTooltip(itemId + "|" + echoValue, () -> getItemTooltipWithEchoes(itemId, echoValue, 1)));
         }
+    }
+    
+    /**
+     * Binds a grid slot's clicks once, when the slot is created. Events carry the slot, and the
+     * item is looked up in what the client was last sent when the click arrives.
+     */
+    private void bindTransmuteEvents(@Nonnull UIEventBuilder events, int slotIndex) {
+        String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
         
-        // Fill remaining slots to make a multiple of 9
-        int remainder = slotIndex % 9;
-        if (remainder != 0 && slotIndex > 0) {
-            int emptySlots = 9 - remainder;
-            for (int i = 0; i < emptySlots; i++) {
-                commands.append("#DiscoveredItemsGrid", "Pages/SimpleStorageSlot.ui");
-                String emptySelector = "#DiscoveredItemsGrid[" + slotIndex + "]";
-                commands.set(emptySelector + " #SlotItem.ItemId", "");
-                commands.set(emptySelector + " #QuantityLabel.Visible", false);
-                commands.set(emptySelector + " #HotbarNumberBg.Visible", false);
-                slotIndex++;
-            }
-        }
+        // Left click: transmute full stack (64)
+        events.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                selector,
+                EventData.of("Action", "transmute_max:" + slotIndex),
+                false
+        );
+        
+        // Right click: transmute one
+        events.addEventBinding(
+                CustomUIEventBindingType.RightClicking,
+                selector,
+                EventData.of("Action", "transmute_one:" + slotIndex),
+                false
+        );
+    }
+    
+    /**
+     * @return the item the client shows in a discovered grid slot, "" for padding or a slot that no longer exists
+     */
+    @Nonnull
+    private String getGridItemId(int slotIndex) {
+        return gridItemIds != null && slotIndex >= 0 && slotIndex < gridItemIds.length ? gridItemIds[slotIndex] : "";
     }
     
     /**
@@ -489,42 +639,16 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         }
     }
     
-    /**
-     * Gets the localized name for an item for search filtering.
-     */
-    private String getItemName(@Nonnull String itemId) {
-        Item item = Item.getAssetMap().getAsset(itemId);
-        if (item != null) {
-            // Get translation key and try to resolve it
-            // For search purposes, we use the English translation
-            // Note: In a real implementation, you'd want to use the player's locale
-            try {
-                String translationKey = item.getTranslationKey();
-                // For now, use a simple approach - check if we have a direct name
-                // Otherwise fall back to processing the ID
-                if (item.getTranslationProperties() != null && 
-                    item.getTranslationProperties().getName() != null &&
-                    !item.getTranslationProperties().getName().startsWith("server.")) {
-                    return item.getTranslationProperties().getName();
-                }
-            } catch (Exception e) {
-                // Fall through to fallback
-            }
-        }
-        // Fallback: replace underscores with spaces
-        return itemId.replace("_", " ");
-    }
-    
     /**
      * Creates a tooltip message with item name and Echo value.
      */
     private Message getItemTooltipWithEchoes(@Nonnull String itemId, int echoValue, int quantity) {
-        Item item = Item.getAssetMap().getAsset(itemId);
+        String translationKey = session.getTranslationKey(itemId);
         Message itemName;
         
-        if (item != null) {
+        if (translationKey != null) {
             // Use translation key to get proper localized name
-            itemName = Message.translation(item.getTranslationKey());
+            itemName = Message.translation(translationKey);
         } else {
             // Fallback: use itemId with underscores replaced
             itemName = Message.raw(itemId.replace("_", " "));
@@ -555,49 +679,14 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         
         commands.clear("#PlayerInventory");
         
-        long currentEchoes = machineData.getStoredEchoes();
-        long maxCapacity = machineData.getMaxCapacity();
-        long remainingCapacity = maxCapacity - currentEchoes;
-        
         int playerSlotIndex = 0;
         
         // First add storage slots (27 slots = 3 rows of 9)
         for (short slot = 0; slot < invStorage.getCapacity(); slot++) {
-            ItemStack item = invStorage.getItemStack(slot);
             String selector = "#PlayerInventory[" + playerSlotIndex + "]";
             
             commands.append("#PlayerInventory", "Pages/SimpleStorageSlot.ui");
             
-            if (item != null) {
-                commands.set(selector + " #SlotItem.ItemId", item.getItemId());
-                commands.set(selector + " #QuantityLabel.Text", String.valueOf(item.getQuantity()));
-                commands.set(selector + " #QuantityLabel.Visible", item.getQuantity() > 1);
-                
-                // Show Echo value in bottom-left
-                int echoValue;
-                if (item.getItemId().equals("EchoScroll")) {
-                    // Read echo value from scroll's metadata
-                    Long scrollValue = com.echoexchange.item.EchoScrollManager.getScrollValue(item);
-                    echoValue = scrollValue != null ? scrollValue.intValue() : 1;
-                } else {
-                    echoValue = EchoValueCalculator.getInstance().getEchoValue(item.getItemId());
-                }
-                commands.set(selector + " #EchoesLabel.Visible", true);
-                commands.set(selector + " #EchoesLabel.Text", formatQuantity(echoValue));
-                
-                // Show overlay if item can't be deposited (not enough capacity for even one)
-                boolean canDeposit = echoValue <= remainingCapacity;
-                commands.set(selector + " #UnaffordableOverlay.Visible", !canDeposit);
-                
-                // Add Echo value to tooltip
-                commands.set(selector + ".TooltipTextSpans", getItemTooltipWithEchoes(item.getItemId(), echoValue, item.getQuantity()));
-            } else {
-                commands.set(selector + " #SlotItem.ItemId", "");
-                commands.set(selector + " #QuantityLabel.Visible", false);
-                commands.set(selector + " #EchoesLabel.Visible", false);
-                commands.set(selector + ".TooltipTextSpans", Message.empty());
-            }
-            
             // Add click handlers for burning
             // Left click: burn full stack
             events.addEventBinding(
@@ -620,41 +709,10 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         
         // Then add hotbar slots (9 slots = 1 row)
         for (short slot = 0; slot < hotbar.getCapacity(); slot++) {
-            ItemStack item = hotbar.getItemStack(slot);
             String selector = "#PlayerInventory[" + playerSlotIndex + "]";
             
             commands.append("#PlayerInventory", "Pages/SimpleStorageSlot.ui");
             
-            if (item != null) {
-                commands.set(selector + " #SlotItem.ItemId", item.getItemId());
-                commands.set(selector + " #QuantityLabel.Text", String.valueOf(item.getQuantity()));
-                commands.set(selector + " #QuantityLabel.Visible", item.getQuantity() > 1);
-                
-                // Show Echo value in bottom-left
-                int echoValue;
-                if (item.getItemId().equals("EchoScroll")) {
-                    // Read echo value from scroll's metadata
-                    Long scrollValue = com.echoexchange.item.EchoScrollManager.getScrollValue(item);
-                    echoValue = scrollValue != null ? scrollValue.intValue() : 1;
-                } else {
-                    echoValue = EchoValueCalculator.getInstance().getEchoValue(item.getItemId());
-                }
-                commands.set(selector + " #EchoesLabel.Visible", true);
-                commands.set(selector + " #EchoesLabel.Text", formatQuantity(echoValue));
-                
-                // Show overlay if item can't be deposited (not enough capacity for even one)
-                boolean canDeposit = echoValue <= remainingCapacity;
-                commands.set(selector + " #UnaffordableOverlay.Visible", !canDeposit);
-                
-                // Add Echo value to tooltip
-                commands.set(selector + ".TooltipTextSpans", getItemTooltipWithEchoes(item.getItemId(), echoValue, item.getQuantity()));
-            } else {
-                commands.set(selector + " #SlotItem.ItemId", "");
-                commands.set(selector + " #QuantityLabel.Visible", false);
-                commands.set(selector + " #EchoesLabel.Visible", false);
-                commands.set(selector + ".TooltipTextSpans", Message.empty());
-            }
-            
             // Show hotbar number (1-9) with background
             String hotbarNumber = String.valueOf(slot + 1);
             commands.set(selector + " #HotbarNumberBg #HotbarNumber.Text", hotbarNumber);
@@ -679,6 +737,65 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
             
             playerSlotIndex++;
         }
+        
+        updatePlayerInventory(commands, playerInventory, machineData);
+    }
+    
+    /**
+     * Sets the contents of every inventory slot, storage first and then the hotbar.
+     */
+    private void updatePlayerInventory(@Nonnull UICommandBuilder commands, @Nonnull Inventory playerInventory,
+                                       @Nonnull ExchangeMachineManager.MachineData machineData) {
+        ItemContainer invStorage = playerInventory.getStorage();
+        ItemContainer hotbar = playerInventory.getHotbar();
+        long remainingCapacity = machineData.getMaxCapacity() - machineData.getStoredEchoes();
+        
+        int playerSlotIndex = 0;
+        for (short slot = 0; slot < invStorage.getCapacity(); slot++) {
+            updateInventorySlot(commands, "#PlayerInventory[" + playerSlotIndex++ + "]", invStorage.getItemStack(slot), remainingCapacity);
+        }
+        for (short slot = 0; slot < hotbar.getCapacity(); slot++) {
+            updateInventorySlot(commands, "#PlayerInventory[" + playerSlotIndex++ + "]", hotbar.getItemStack(slot), remainingCapacity);
+        }
+    }
+    
+    private void updateInventorySlot(@Nonnull UICommandBuilder commands, @Nonnull String selector,
+                                     @Nullable ItemStack item, long remainingCapacity) {
+        if (item == null) {
+            sentState.set(commands, selector + " #SlotItem.ItemId", "");
+            sentState.set(commands, selector + " #QuantityLabel.Visible", false);
+            sentState.set(commands, selector + " #EchoesLabel.Visible", false);
+            sentState.set(commands, selector + " #UnaffordableOverlay.Visible", false);
+            sentState.set(commands, selector + ".TooltipTextSpans", "", Message::empty);
+            return;
+        }
+        
+        String itemId = item.getItemId();
+        int quantity = item.getQuantity();
+        sentState.set(commands, selector + " #SlotItem.ItemId", itemId);
+        sentState.set(commands, selector + " #QuantityLabel.Text", String.valueOf(quantity));
+        sentState.set(commands, selector + " #QuantityLabel.Visible", quantity > 1);
+        
+        // Show Echo value in bottom-left
+        int echoValue;
+        if (itemId.equals("EchoScroll")) {
+            // Read echo value from scroll's metadata
+            Long scrollValue = com.echoexchange.item.EchoScrollManager.getScrollValue(item);
+            echoValue = scrollValue != null ? scrollValue.intValue() : 1;
+        } else {
+            echoValue = EchoValueCalculator.getInstance().getEchoValue(itemId);
+        }
+        sentState.set(commands, selector + " #EchoesLabel.Visible", true);
+        sentState.set(commands, selector + " #EchoesLabel.Text", formatQuantity(echoValue));
+        
+        // Show overlay if item can't be deposited (not enough capacity for even one)
+        boolean canDeposit = echoValue <= remainingCapacity;
+        sentState.set(commands, selector + " #UnaffordableOverlay.Visible", !canDeposit);
+        
+        // Add Echo value to tooltip
+        String tooltipKey = itemId + "|" + echoValue + "|" + quantity;
+        sentState.set(commands, selector + ".TooltipTextSpans", tooltipKey,
+            () -> session.getTooltip(tooltipKey, () -> getItemTooltipWithEchoes(itemId, echoValue, quantity)));
     }
     
     /**
@@ -689,84 +806,102 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         // Set the block icon to show the Exchange Machine block item
         commands.set("#BlockIcon.ItemId", "ExchangeMachine");
         
+        var upgradeConfigs = EchoExchangePlugin.getInstance().getModConfig().getUpgradeSlots();
+        
+        // Build upgrade slots dynamically
+        commands.clear("#UpgradeSlotsContainer");
+        
+        for (int i = 0; i < upgradeConfigs.size(); i++) {
+            var slotConfig = upgradeConfigs.get(i);
+            String selector = "#UpgradeSlotsContainer[" + i + "]";
+            
+            commands.append("#UpgradeSlotsContainer", "Pages/UpgradeSlot.ui");
+            
+            // Set the required item
+            commands.set(selector + " #RequiredItem.ItemId", slotConfig.getItemId());
+            commands.set(selector + " #RequiredItem.Visible", true);
+            commands.set(selector + " #ResourceTypeIcon.Visible", false);
+            
+            // Bound on every slot so a slot completing needs no rebinding; clicks on complete ones are ignored
+            events.addEventBinding(
+                    CustomUIEventBindingType.Activating,
+                    selector,
+                    EventData.of("Action", "upgrade_click:" + i),
+                    false
+            );
+        }
+        
+        updateInfoPanel(commands, playerInventory, machineData);
+    }
+    
+    /**
+     * Sets the upgrade count, capacity info and the progress of each upgrade slot.
+     */
+    private void updateInfoPanel(@Nonnull UICommandBuilder commands, @Nonnull Inventory playerInventory,
+                                 @Nonnull ExchangeMachineManager.MachineData machineData) {
         var config = EchoExchangePlugin.getInstance().getModConfig();
         var upgradeConfigs = config.getUpgradeSlots();
         int totalUpgrades = upgradeConfigs.size();
-        int completedUpgrades = machineData.getUpgradeLevel();
+        boolean[] upgradeComplete = session.getUpgradeCompletion(machineData.getVersion(), machineData::getUpgradeSlotProgress);
+        int completedUpgrades = session.getCompletedUpgrades(machineData.getVersion(), machineData::getUpgradeSlotProgress);
         
         // Update upgrade count display
-        commands.set("#UpgradeCount.Text", completedUpgrades + " / " + totalUpgrades);
+        sentState.set(commands, "#UpgradeCount.Text", completedUpgrades + " / " + totalUpgrades);
         
         // Update capacity info
         long currentCapacity = machineData.getMaxCapacity();
         long nextCapacity = (long) (config.getBaseEchoStorage() * Math.pow(config.getCapacityMultiplier(), completedUpgrades + 1));
         
         if (completedUpgrades < totalUpgrades) {
-            commands.set("#CapacityInfo.Text", "Next: " + formatNumberWithCommas(currentCapacity) + " -> " + formatNumberWithCommas(nextCapacity));
+            sentState.set(commands, "#CapacityInfo.Text", "Next: " + formatNumberWithCommas(currentCapacity) + " -> " + formatNumberWithCommas(nextCapacity));
         } else {
-            commands.set("#CapacityInfo.Text", "Max capacity reached!");
+            sentState.set(commands, "#CapacityInfo.Text", "Max capacity reached!");
         }
         
-        // Build upgrade slots dynamically
-        commands.clear("#UpgradeSlotsContainer");
-        
         for (int i = 0; i < totalUpgrades; i++) {
             var slotConfig = upgradeConfigs.get(i);
             String selector = "#UpgradeSlotsContainer[" + i + "]";
             
-            commands.append("#UpgradeSlotsContainer", "Pages/UpgradeSlot.ui");
-            
-            // Set the required item
-            commands.set(selector + " #RequiredItem.ItemId", slotConfig.getItemId());
-            commands.set(selector + " #RequiredItem.Visible", true);
-            commands.set(selector + " #ResourceTypeIcon.Visible", false);
-            
             int requiredAmount = slotConfig.getRequiredAmount();
             int currentProgress = machineData.getUpgradeSlotProgress(slotConfig.getItemId());
-            boolean isComplete = currentProgress >= requiredAmount;
+            boolean isComplete = upgradeComplete[i];
             
             // Set progress text
             String progressText = currentProgress + "/" + requiredAmount;
-            commands.set(selector + " #ProgressLabel.Text", progressText);
+            sentState.set(commands, selector + " #ProgressLabel.Text", progressText);
             
             // Show/hide completed overlay
-            commands.set(selector + " #CompletedOverlay.Visible", isComplete);
+            sentState.set(commands, selector + " #CompletedOverlay.Visible", isComplete);
             
             // Check if player has any of the required item
-            boolean hasItem = countPlayerItems(playerInventory, slotConfig.getItemId()) > 0;
+            boolean hasItem = session.countItems(playerInventory, slotConfig.getItemId()) > 0;
             
             // Show/hide dimmed overlay and clickable highlight
             // Can click any incomplete upgrade if player has items (non-sequential)
             boolean canClick = hasItem && !isComplete;
-            commands.set(selector + " #DimmedOverlay.Visible", !hasItem && !isComplete);
-            commands.set(selector + " #ClickableHighlight.Visible", canClick);
+            sentState.set(commands, selector + " #DimmedOverlay.Visible", !hasItem && !isComplete);
+            sentState.set(commands, selector + " #ClickableHighlight.Visible", canClick);
             
             // Set tooltip
-            Item item = Item.getAssetMap().getAsset(slotConfig.getItemId());
-            Message tooltip;
-            if (item != null) {
-                tooltip = Message.translation(item.getTranslationKey());
-            } else {
-                tooltip = Message.raw(slotConfig.getItemId());
-            }
-            
-            if (isComplete) {
-                tooltip = Message.join(tooltip, Message.raw(" (Complete)"));
-            } else {
-                tooltip = Message.join(tooltip, Message.raw(" (" + currentProgress + "/" + requiredAmount + ")"));
-            }
-            commands.set(selector + ".TooltipTextSpans", tooltip);
-            
-            // Add click event for any incomplete upgrade
-            if (!isComplete) {
-                events.addEventBinding(
-                        CustomUIEventBindingType.Activating,
-                        selector,
-                        EventData.of("Action", "upgrade_click:" + i),
-                        false
-                );
-            }
+            sentState.set(commands, selector + ".TooltipTextSpans", isComplete ? "complete" : progressText,
+                () -> session.getTooltip("upgrade|" + slotConfig.getItemId() + "|" + (isComplete ? "complete" : progressText),
+                    () -> getUpgradeTooltip(slotConfig.getItemId(), isComplete, progressText)));
+        }
+    }
+    
+    private Message getUpgradeTooltip(@Nonnull String itemId, boolean isComplete, @Nonnull String progressText) {
+        String translationKey = session.getTranslationKey(itemId);
+        Message tooltip;
+        if (translationKey != null) {
+            tooltip = Message.translation(translationKey);
+        } else {
+            tooltip = Message.raw(itemId);
+        }
+        
+        if (isComplete) {
+            return Message.join(tooltip, Message.raw(" (Complete)"));
         }
+        return Message.join(tooltip, Message.raw(" (" + progressText + ")"));
     }
     
     /**
@@ -835,8 +970,8 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         // Add taken items to upgrade slot progress
         if (toTake > remaining) {
             int actuallyTaken = toTake - remaining;
-            machineData.addUpgradeSlotProgress(itemId, actuallyTaken);
-            ExchangeMachineManager.getInstance().markDirty();
+            ExchangeMachineManager.getInstance().updateMachineData(worldName, blockPosition,
+                data -> data.addUpgradeSlotProgress(itemId, actuallyTaken));
         }
         
         EchoExchangePlugin.getInstance().getLogger().at(Level.INFO)
@@ -867,7 +1002,7 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
         
         return count;
     }
-
+    
     /**
      * Data class for UI events from the Exchange Machine page.
      */
@@ -884,7 +1019,7 @@ public class ExchangeMachinePage extends InteractiveCustomUIPage<ExchangeMachine
                         (data, value) -> data.searchText = value,
                         data -> data.searchText)
                 .build();
-
+        
         public ExchangeMachinePageData() {
         }
     }
@@ -2,6 +2,7 @@ package com.echoexchange.ui;
 
 import com.echoexchange.EchoExchangePlugin;
 import com.echoexchange.echo.EchoValueCalculator;
+import com.echoexchange.echo.EchoValueTable;
 import com.echoexchange.item.ExchangeTabletManager;
 import com.echoexchange.storage.ExchangeMachineManager;
 import com.hypixel.hytale.codec.Codec;
@@ -22,9 +23,11 @@ import com.hypixel.hytale.server.core.ui.builder.EventData;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.ui.builder.UIEventBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -33,15 +36,35 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
     private ItemStack tabletStack;
     private short tabletSlot;
     private ItemContainer tabletContainer;
-    private String searchText = "";
-
+    private final SearchDebouncer searchDebouncer = new SearchDebouncer();
+    // Cached search text and derived views for as long as the page is open
+    private final PageSession session;
+    // What the client was last sent, so updates after an action only carry what changed
+    private final UiStateModel sentState = new UiStateModel();
+    // Item each discovered grid slot shows, "" for padding; clicks are resolved against it. Null until the grid is built
+    private String[] gridItemIds = null;
+    // Every discovered item matching the search, in display order; only one page of it is sent
+    private java.util.List<PageSession.DiscoveredItem> discoveredView = java.util.Collections.emptyList();
+    private int gridPage = 0;
+    // Changes made to the tablet through this page; the item itself only stores the tablet's data
+    private long tabletVersion = 0;
+    // Inputs of what the client last saw; a refresh skips sections whose inputs are unchanged
+    private long renderedDataVersion = -1;
+    private long renderedDiscoveryVersion = -1;
+    private long renderedInventoryVersion = -1;
+    private EchoValueTable renderedValueTable;
+    // Set once a redraw is queued for the end of the value warm-up, so rebuilds do not queue another
+    private boolean waitingForValues = false;
+    private boolean dismissed = false;
+    
     public ExchangeTabletPage(@Nonnull PlayerRef playerRef, @Nonnull ItemStack tabletStack) {
         super(playerRef, CustomPageLifetime.CanDismissOrCloseThroughInteraction, TabletPageData.CODEC);
         this.tabletStack = tabletStack;
         this.tabletSlot = -1;
         this.tabletContainer = null;
+        this.session = new PageSession(playerRef.getUuid());
     }
-
+    
     @Override
     public void handleDataEvent(Ref<EntityStore> ref, Store<EntityStore> store, TabletPageData data) {
         Player player = store.getComponent(ref, Player.getComponentType());
@@ -63,20 +86,25 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
         }
         
         if ((data.action == null || data.action.isEmpty()) && data.searchText != null) {
-            searchText = data.searchText.toLowerCase();
-            
-            ExchangeMachineManager.getInstance().setPlayerSearchQuery(player.getUuid(), searchText);
-            
-            UICommandBuilder commands = new UICommandBuilder();
-            UIEventBuilder events = new UIEventBuilder();
-            buildDiscoveredItemsGrid(commands, events, player, tabletData);
-            sendUpdate(commands, events, false);
+            // Typing sends an event per character; only the last one of a burst rebuilds the grid
+            searchDebouncer.submit(data.searchText.toLowerCase(), store.getExternalData().getWorld(),
+                text -> applySearch(ref, store, text));
             return;
         }
         
         String action = data.action;
         if (action == null || action.isEmpty()) return;
         
+        if (action.equals("page_prev") || action.equals("page_next")) {
+            // Paging re-slices the list already built for the current search
+            gridPage += action.equals("page_next") ? 1 : -1;
+            UICommandBuilder commands = new UICommandBuilder();
+            UIEventBuilder events = new UIEventBuilder();
+            buildGridPage(commands, events, tabletData.getStoredEchoes());
+            sendUpdate(commands, events, false);
+            return;
+        }
+        
         // Handle actions
         if (action.startsWith("burn_inventory:")) {
             int slot = Integer.parseInt(action.substring("burn_inventory:".length()));
@@ -103,7 +131,9 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
                 handleBurnItem(player, inventory, tabletData, inventory.getHotbar(), (short) slot, stack.getItemId(), 1);
             }
         } else if (action.startsWith("transmute_max:")) {
-            String itemId = action.substring("transmute_max:".length());
+            String itemId = getGridItemId(Integer.parseInt(action.substring("transmute_max:".length())));
+            if (itemId.isEmpty()) return;
+            
             // Get the item's max stack size
             Item item = Item.getAssetMap().getAsset(itemId);
             int maxStack = item != null ? item.getMaxStack() : 64;
@@ -117,21 +147,58 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
                 handleTransmuteItem(player, inventory, tabletData, itemId, quantity);
             }
         } else if (action.startsWith("transmute_one:")) {
-            String itemId = action.substring("transmute_one:".length());
+            String itemId = getGridItemId(Integer.parseInt(action.substring("transmute_one:".length())));
+            if (itemId.isEmpty()) return;
             handleTransmuteItem(player, inventory, tabletData, itemId, 1);
         } else if (action.startsWith("upgrade_click:")) {
             int slotIndex = Integer.parseInt(action.substring("upgrade_click:".length()));
             handleUpgradeClick(inventory, tabletData, slotIndex);
         }
         
-        // Save tablet data back to item by replacing it
-        ItemStack updatedTablet = ExchangeTabletManager.updateTabletData(tabletStack, tabletData);
-        tabletContainer.removeItemStackFromSlot(tabletSlot, 1);
-        tabletContainer.addItemStack(updatedTablet);
-        tabletStack = updatedTablet;
+        // Save tablet data back to item by replacing it, if the action changed anything
+        if (tabletData.getVersion() > 0) {
+            ItemStack updatedTablet = ExchangeTabletManager.updateTabletData(tabletStack, tabletData);
+            tabletContainer.removeItemStackFromSlot(tabletSlot, 1);
+            tabletContainer.addItemStack(updatedTablet);
+            tabletStack = updatedTablet;
+            tabletVersion++;
+        }
         
-        // Rebuild UI
-        rebuild();
+        // Send only what the action changed
+        sendChanges(player, inventory, tabletData);
+    }
+    
+    private void sendChanges(@Nonnull Player player, @Nonnull Inventory inventory,
+                             @Nonnull ExchangeTabletManager.TabletData tabletData) {
+        long dataVersion = tabletVersion;
+        long discoveryVersion = ExchangeMachineManager.getInstance().getPlayerDiscoveries(player.getUuid()).getVersion();
+        long inventoryVersion = session.getInventoryVersion(inventory);
+        EchoValueTable valueTable = EchoValueCalculator.getInstance().getValueTable();
+        boolean dataChanged = dataVersion != renderedDataVersion;
+        boolean valuesChanged = valueTable != renderedValueTable;
+        
+        UICommandBuilder commands = new UICommandBuilder();
+        UIEventBuilder events = new UIEventBuilder();
+        if (dataChanged) {
+            updateEchoDisplay(commands, tabletData);
+        }
+        if (dataChanged || valuesChanged || discoveryVersion != renderedDiscoveryVersion) {
+            buildDiscoveredItemsGrid(commands, events, tabletData);
+        }
+        if (dataChanged || valuesChanged || inventoryVersion != renderedInventoryVersion) {
+            updatePlayerInventory(commands, inventory, tabletData);
+            updateInfoPanel(commands, inventory, tabletData);
+        }
+        markRendered(dataVersion, discoveryVersion, inventoryVersion, valueTable);
+        sendUpdate(commands, events, false);
+    }
+    
+    private void markRendered(long dataVersion, long discoveryVersion, long inventoryVersion,
+                              @Nonnull EchoValueTable valueTable) {
+        renderedDataVersion = dataVersion;
+        renderedDiscoveryVersion = discoveryVersion;
+        renderedInventoryVersion = inventoryVersion;
+        renderedValueTable = valueTable;
     }
     
     private void findTablet(Inventory inventory) {
@@ -340,7 +407,7 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
                      tabletData.getUpgradeSlotProgress(itemId), requiredAmount);
         }
     }
-
+    
     @Override
     public void build(@Nonnull Ref<EntityStore> ref, @Nonnull UICommandBuilder commands,
                      @Nonnull UIEventBuilder events, @Nonnull Store<EntityStore> store) {
@@ -349,6 +416,10 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
         
         Inventory inventory = player.getInventory();
         
+        // The client starts from a fresh page
+        sentState.reset();
+        gridItemIds = null;
+        
         // Find the tablet
         findTablet(inventory);
         if (tabletContainer == null || tabletSlot == -1) {
@@ -362,24 +433,25 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
             tabletData = new ExchangeTabletManager.TabletData();
         }
         
-        // Load saved search query
-        if (searchText.isEmpty()) {
-            searchText = ExchangeMachineManager.getInstance().getPlayerSearchQuery(player.getUuid());
-        }
-        
         // Load UI
         commands.append("Pages/ExchangeMachine.ui");
         
-        // Update Echo display
-        long currentEchoes = tabletData.getStoredEchoes();
-        long maxCapacity = tabletData.getMaxCapacity();
-        double progressPercent = maxCapacity > 0 ? ((double) currentEchoes / maxCapacity) : 0.0;
+        // During the warm-up the grid lists only valued items; redraw it once every item has a value
+        if (!waitingForValues && !EchoValueCalculator.getInstance().isReady()) {
+            waitingForValues = true;
+            World world = store.getExternalData().getWorld();
+            EchoValueCalculator.getInstance().whenReady(() -> world.execute(() -> pushValueChanges(ref, store)));
+        }
         
-        commands.set("#EchoBalanceLabel.Text", "Echoes: " + formatNumberWithCommas(currentEchoes) + " / " + formatNumberWithCommas(maxCapacity));
-        commands.set("#EchoProgressBar.Value", progressPercent);
+        markRendered(tabletVersion,
+            ExchangeMachineManager.getInstance().getPlayerDiscoveries(player.getUuid()).getVersion(),
+            session.getInventoryVersion(inventory), EchoValueCalculator.getInstance().getValueTable());
+        
+        // Update Echo display
+        updateEchoDisplay(commands, tabletData);
         
         // Build discovered items
-        buildDiscoveredItems(commands, events, player, tabletData);
+        buildDiscoveredItems(commands, events, tabletData);
         
         // Build player inventory for burning items
         buildPlayerInventory(commands, events, inventory, tabletData);
@@ -388,117 +460,179 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
         buildInfoPanel(commands, events, inventory, tabletData);
     }
     
+    private void updateEchoDisplay(@Nonnull UICommandBuilder commands, @Nonnull ExchangeTabletManager.TabletData tabletData) {
+        long currentEchoes = tabletData.getStoredEchoes();
+        long maxCapacity = tabletData.getMaxCapacity();
+        double progressPercent = maxCapacity > 0 ? ((double) currentEchoes / maxCapacity) : 0.0;
+        
+        sentState.set(commands, "#EchoBalanceLabel.Text", "Echoes: " + formatNumberWithCommas(currentEchoes) + " / " + formatNumberWithCommas(maxCapacity));
+        sentState.set(commands, "#EchoProgressBar.Value", progressPercent);
+    }
+    
     private void buildDiscoveredItems(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
-                                      @Nonnull Player player, @Nonnull ExchangeTabletManager.TabletData tabletData) {
+                                      @Nonnull ExchangeTabletManager.TabletData tabletData) {
         // Set up search field
-        commands.set("#SearchInput.Value", searchText);
+        commands.set("#SearchInput.Value", session.getSearchText());
         events.addEventBinding(
                 CustomUIEventBindingType.ValueChanged,
                 "#SearchInput",
                 EventData.of("@SearchText", "#SearchInput.Value"),
                 false
         );
+        events.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                "#PrevPageButton",
+                EventData.of("Action", "page_prev"),
+                false
+        );
+        events.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                "#NextPageButton",
+                EventData.of("Action", "page_next"),
+                false
+        );
         
         // Build the grid content
-        buildDiscoveredItemsGrid(commands, events, player, tabletData);
+        buildDiscoveredItemsGrid(commands, events, tabletData);
     }
     
-    private void buildDiscoveredItemsGrid(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
-                                          @Nonnull Player player, @Nonnull ExchangeTabletManager.TabletData tabletData) {
-        commands.clear("#DiscoveredItemsGrid");
+    @Override
+    public void onDismiss(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store) {
+        super.onDismiss(ref, store);
+        dismissed = true;
+        searchDebouncer.cancel();
+        session.release();
+    }
+    
+    /**
+     * Redraws what depends on Echo values once the warm-up has finished. Runs on the world thread.
+     */
+    private void pushValueChanges(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store) {
+        if (dismissed || !ref.isValid()) return;
+        Player player = store.getComponent(ref, Player.getComponentType());
+        if (player == null) return;
         
-        java.util.Set<String> discoveredItems = ExchangeMachineManager.getInstance().getPlayerDiscoveredItems(player.getUuid());
-        if (discoveredItems.isEmpty()) {
-            return;
-        }
+        findTablet(player.getInventory());
+        ExchangeTabletManager.TabletData tabletData = ExchangeTabletManager.getTabletData(tabletStack);
+        if (tabletData == null) return;
         
-        long currentEchoes = tabletData.getStoredEchoes();
+        sendChanges(player, player.getInventory(), tabletData);
+    }
+    
+    private void applySearch(@Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store, @Nonnull String text) {
+        if (!ref.isValid()) return;
+        Player player = store.getComponent(ref, Player.getComponentType());
+        if (player == null) return;
         
-        // Filter and sort
-        java.util.List<String> sortedItems = new java.util.ArrayList<>(discoveredItems);
+        findTablet(player.getInventory());
+        ExchangeTabletManager.TabletData tabletData = ExchangeTabletManager.getTabletData(tabletStack);
+        if (tabletData == null) return;
         
-        if (!searchText.isEmpty()) {
-            sortedItems.removeIf(itemId -> {
-                String itemName = getItemName(itemId).toLowerCase();
-                return !itemName.contains(searchText) && !itemId.toLowerCase().contains(searchText);
-            });
-        }
+        session.setSearchText(text);
+        gridPage = 0;
         
-        sortedItems.sort((item1, item2) -> {
-            int value1 = EchoValueCalculator.getInstance().getEchoValue(item1);
-            int value2 = EchoValueCalculator.getInstance().getEchoValue(item2);
-            boolean canAfford1 = value1 <= currentEchoes;
-            boolean canAfford2 = value2 <= currentEchoes;
-            
-            if (canAfford1 != canAfford2) {
-                return canAfford1 ? -1 : 1;
+        UICommandBuilder commands = new UICommandBuilder();
+        UIEventBuilder events = new UIEventBuilder();
+        buildDiscoveredItemsGrid(commands, events, tabletData);
+        sendUpdate(commands, events, false);
+    }
+    
+    private void buildDiscoveredItemsGrid(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
+                                          @Nonnull ExchangeTabletManager.TabletData tabletData) {
+        long currentEchoes = tabletData.getStoredEchoes();
+        discoveredView = session.getDiscoveredView(playerRef.getLanguage(), currentEchoes);
+        buildGridPage(commands, events, currentEchoes);
+    }
+    
+    private void buildGridPage(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events, long currentEchoes) {
+        int pageSize = Math.max(1, EchoExchangePlugin.getInstance().getModConfig().getDiscoveredPageRows()) * 9;
+        int pageCount = PageSession.pageCount(discoveredView.size(), pageSize);
+        gridPage = PageSession.clampPage(gridPage, discoveredView.size(), pageSize);
+        java.util.List<PageSession.DiscoveredItem> sortedItems = PageSession.pageOf(discoveredView, gridPage, pageSize);
+        
+        sentState.set(commands, "#DiscoveredPager.Visible", pageCount > 1);
+        sentState.set(commands, "#PageLabel.Text", "Page " + (gridPage + 1) + " / " + pageCount);
+        
+        // Slots are only re-created when the padded slot count changes; otherwise only changed properties are sent
+        int slotCount = (sortedItems.size() + 8) / 9 * 9;
+        if (gridItemIds == null || gridItemIds.length != slotCount) {
+            // With no items discovered the grid stays empty and the static label in UI will show
+            commands.clear("#DiscoveredItemsGrid");
+            sentState.forget("#DiscoveredItemsGrid[");
+            for (int slotIndex = 0; slotIndex < slotCount; slotIndex++) {
+                String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
+                commands.append("#DiscoveredItemsGrid", "Pages/SimpleStorageSlot.ui");
+                commands.set(selector + " #HotbarNumberBg.Visible", false);
+                bindTransmuteEvents(events, slotIndex);
             }
-            
-            return Integer.compare(value2, value1);
-        });
+            gridItemIds = new String[slotCount];
+        }
         
-        // Build item slots
-        int slotIndex = 0;
-        for (String itemId : sortedItems) {
+        for (int slotIndex = 0; slotIndex < slotCount; slotIndex++) {
             String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
-            int echoValue = EchoValueCalculator.getInstance().getEchoValue(itemId);
-            boolean canAfford = echoValue <= currentEchoes;
-            
-            commands.append("#DiscoveredItemsGrid", "Pages/SimpleStorageSlot.ui");
-            
-            commands.set(selector + " #SlotItem.ItemId", itemId);
-            
-            if (canAfford && echoValue > 0) {
-                int maxQuantity = (int) (currentEchoes / echoValue);
-                if (maxQuantity > 0) {
-                    commands.set(selector + " #QuantityLabel.Text", abbreviateNumber(maxQuantity));
-                    commands.set(selector + " #QuantityLabel.Visible", true);
-                } else {
-                    commands.set(selector + " #QuantityLabel.Visible", false);
-                }
-            } else {
-                commands.set(selector + " #QuantityLabel.Visible", false);
+            if (slotIndex >= sortedItems.size()) {
+                gridItemIds[slotIndex] = "";
+                sentState.set(commands, selector + " #SlotItem.ItemId", "");
+                sentState.set(commands, selector + " #QuantityLabel.Visible", false);
+                sentState.set(commands, selector + " #EchoesLabel.Visible", false);
+                sentState.set(commands, selector + " #UnaffordableOverlay.Visible", false);
+                sentState.set(commands, selector + ".TooltipTextSpans", "", Message::empty);
+                continue;
             }
             
-            commands.set(selector + " #EchoesLabel.Visible", true);
-            commands.set(selector + " #EchoesLabel.Text", formatQuantity(echoValue));
-            commands.set(selector + " #EchoesLabel.Style.TextColor", canAfford ? "#a78bfa" : "#9ca3af");
+            PageSession.DiscoveredItem discoveredItem = sortedItems.get(slotIndex);
+            String itemId = discoveredItem.getItemId();
+            int echoValue = discoveredItem.getEchoValue();
+            boolean canAfford = echoValue <= currentEchoes;
+            gridItemIds[slotIndex] = itemId;
             
-            commands.set(selector + " #UnaffordableOverlay.Visible", !canAfford);
-            commands.set(selector + " #HotbarNumberBg.Visible", false);
+            sentState.set(commands, selector + " #SlotItem.ItemId", itemId);
             
-            commands.set(selector + ".TooltipTextSpans", getItemTooltipWithEchoes(itemId, echoValue, 1));
+            int maxQuantity = canAfford && echoValue > 0 ? (int) (currentEchoes / echoValue) : 0;
+            if (maxQuantity > 0) {
+                sentState.set(commands, selector + " #QuantityLabel.Text", abbreviateNumber(maxQuantity));
+            }
+            sentState.set(commands, selector + " #QuantityLabel.Visible", maxQuantity > 0);
             
-            events.addEventBinding(
-                    CustomUIEventBindingType.Activating,
-                    selector,
-                    EventData.of("Action", "transmute_max:" + itemId),
-                    false
-            );
+            sentState.set(commands, selector + " #EchoesLabel.Visible", true);
+            sentState.set(commands, selector + " #EchoesLabel.Text", formatQuantity(echoValue));
+            sentState.set(commands, selector + " #EchoesLabel.Style.TextColor", canAfford ? "#a78bfa" : "#9ca3af");
             
-            events.addEventBinding(
-                    CustomUIEventBindingType.RightClicking,
-                    selector,
-                    EventData.of("Action", "transmute_one:" + itemId),
-                    false
-            );
+            sentState.set(commands, selector + " #UnaffordableOverlay.Visible", !canAfford);
             
-            slotIndex++;
+            sentState.set(commands, selector + ".TooltipTextSpans", itemId + "|" + echoValue,
+                () -> session.getTooltip(itemId + "|" + echoValue, () -> getItemTooltipWithEchoes(itemId, echoValue, 1)));
         }
+    }
+    
+    /**
+     * Binds a grid slot's clicks once, when the slot is created. Events carry the slot, and the
+     * item is looked up in what the client was last sent when the click arrives.
+     */
+    private void bindTransmuteEvents(@Nonnull UIEventBuilder events, int slotIndex) {
+        String selector = "#DiscoveredItemsGrid[" + slotIndex + "]";
         
-        // Fill remainder
-        int remainder = slotIndex % 9;
-        if (remainder != 0 && slotIndex > 0) {
-            int emptySlots = 9 - remainder;
-            for (int i = 0; i < emptySlots; i++) {
-                commands.append("#DiscoveredItemsGrid", "Pages/SimpleStorageSlot.ui");
-                String emptySelector = "#DiscoveredItemsGrid[" + slotIndex + "]";
-                commands.set(emptySelector + " #SlotItem.ItemId", "");
-                commands.set(emptySelector + " #QuantityLabel.Visible", false);
-                commands.set(emptySelector + " #HotbarNumberBg.Visible", false);
-                slotIndex++;
-            }
-        }
+        events.addEventBinding(
+                CustomUIEventBindingType.Activating,
+                selector,
+                EventData.of("Action", "transmute_max:" + slotIndex),
+                false
+        );
+        
+        events.addEventBinding(
+                CustomUIEventBindingType.RightClicking,
+                selector,
+                EventData.of("Action", "transmute_one:" + slotIndex),
+                false
+        );
+    }
+    
+    /**
+     * @return the item the client shows in a discovered grid slot, "" for padding or a slot that no longer exists
+     */
+    @Nonnull
+    private String getGridItemId(int slotIndex) {
+        return gridItemIds != null && slotIndex >= 0 && slotIndex < gridItemIds.length ? gridItemIds[slotIndex] : "";
     }
     
     private void buildPlayerInventory(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
@@ -508,57 +642,14 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
         
         commands.clear("#PlayerInventory");
         
-        long currentEchoes = tabletData.getStoredEchoes();
-        long maxCapacity = tabletData.getMaxCapacity();
-        long remainingCapacity = maxCapacity - currentEchoes;
-        
         int playerSlotIndex = 0;
         
         // First add storage slots (27 slots = 3 rows of 9)
         for (short slot = 0; slot < invStorage.getCapacity(); slot++) {
-            ItemStack item = invStorage.getItemStack(slot);
             String selector = "#PlayerInventory[" + playerSlotIndex + "]";
             
             commands.append("#PlayerInventory", "Pages/SimpleStorageSlot.ui");
             
-            // Don't allow burning the tablet itself
-            if (item != null && item.getItemId().equals("ExchangeTablet")) {
-                commands.set(selector + " #SlotItem.ItemId", item.getItemId());
-                commands.set(selector + " #QuantityLabel.Text", String.valueOf(item.getQuantity()));
-                commands.set(selector + " #QuantityLabel.Visible", item.getQuantity() > 1);
-                commands.set(selector + " #EchoesLabel.Visible", false);
-                commands.set(selector + " #UnaffordableOverlay.Visible", false);
-                commands.set(selector + ".TooltipTextSpans", Message.raw("Exchange Tablet (Cannot burn)"));
-                playerSlotIndex++;
-                continue;
-            }
-            
-            if (item != null) {
-                commands.set(selector + " #SlotItem.ItemId", item.getItemId());
-                commands.set(selector + " #QuantityLabel.Text", String.valueOf(item.getQuantity()));
-                commands.set(selector + " #QuantityLabel.Visible", item.getQuantity() > 1);
-                
-                // Show Echo value
-                int echoValue;
-                if (item.getItemId().equals("EchoScroll")) {
-                    Long scrollValue = com.echoexchange.item.EchoScrollManager.getScrollValue(item);
-                    echoValue = scrollValue != null ? scrollValue.intValue() : 1;
-                } else {
-                    echoValue = EchoValueCalculator.getInstance().getEchoValue(item.getItemId());
-                }
-                commands.set(selector + " #EchoesLabel.Visible", true);
-                commands.set(selector + " #EchoesLabel.Text", formatQuantity(echoValue));
-                
-                boolean canDeposit = echoValue <= remainingCapacity;
-                commands.set(selector + " #UnaffordableOverlay.Visible", !canDeposit);
-                commands.set(selector + ".TooltipTextSpans", getItemTooltipWithEchoes(item.getItemId(), echoValue, item.getQuantity()));
-            } else {
-                commands.set(selector + " #SlotItem.ItemId", "");
-                commands.set(selector + " #QuantityLabel.Visible", false);
-                commands.set(selector + " #EchoesLabel.Visible", false);
-                commands.set(selector + ".TooltipTextSpans", Message.empty());
-            }
-            
             // Add click handlers
             events.addEventBinding(
                     CustomUIEventBindingType.Activating,
@@ -579,53 +670,10 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
         
         // Then add hotbar slots (9 slots = 1 row)
         for (short slot = 0; slot < hotbar.getCapacity(); slot++) {
-            ItemStack item = hotbar.getItemStack(slot);
             String selector = "#PlayerInventory[" + playerSlotIndex + "]";
             
             commands.append("#PlayerInventory", "Pages/SimpleStorageSlot.ui");
             
-            // Don't allow burning the tablet itself
-            if (item != null && item.getItemId().equals("ExchangeTablet")) {
-                commands.set(selector + " #SlotItem.ItemId", item.getItemId());
-                commands.set(selector + " #QuantityLabel.Text", String.valueOf(item.getQuantity()));
-                commands.set(selector + " #QuantityLabel.Visible", item.getQuantity() > 1);
-                commands.set(selector + " #EchoesLabel.Visible", false);
-                commands.set(selector + " #UnaffordableOverlay.Visible", false);
-                commands.set(selector + ".TooltipTextSpans", Message.raw("Exchange Tablet (Cannot burn)"));
-                
-                String hotbarNumber = String.valueOf(slot + 1);
-                commands.set(selector + " #HotbarNumberBg #HotbarNumber.Text", hotbarNumber);
-                commands.set(selector + " #HotbarNumberBg.Visible", true);
-                
-                playerSlotIndex++;
-                continue;
-            }
-            
-            if (item != null) {
-                commands.set(selector + " #SlotItem.ItemId", item.getItemId());
-                commands.set(selector + " #QuantityLabel.Text", String.valueOf(item.getQuantity()));
-                commands.set(selector + " #QuantityLabel.Visible", item.getQuantity() > 1);
-                
-                int echoValue;
-                if (item.getItemId().equals("EchoScroll")) {
-                    Long scrollValue = com.echoexchange.item.EchoScrollManager.getScrollValue(item);
-                    echoValue = scrollValue != null ? scrollValue.intValue() : 1;
-                } else {
-                    echoValue = EchoValueCalculator.getInstance().getEchoValue(item.getItemId());
-                }
-                commands.set(selector + " #EchoesLabel.Visible", true);
-                commands.set(selector + " #EchoesLabel.Text", formatQuantity(echoValue));
-                
-                boolean canDeposit = echoValue <= remainingCapacity;
-                commands.set(selector + " #UnaffordableOverlay.Visible", !canDeposit);
-                commands.set(selector + ".TooltipTextSpans", getItemTooltipWithEchoes(item.getItemId(), echoValue, item.getQuantity()));
-            } else {
-                commands.set(selector + " #SlotItem.ItemId", "");
-                commands.set(selector + " #QuantityLabel.Visible", false);
-                commands.set(selector + " #EchoesLabel.Visible", false);
-                commands.set(selector + ".TooltipTextSpans", Message.empty());
-            }
-            
             String hotbarNumber = String.valueOf(slot + 1);
             commands.set(selector + " #HotbarNumberBg #HotbarNumber.Text", hotbarNumber);
             commands.set(selector + " #HotbarNumberBg.Visible", true);
@@ -646,6 +694,67 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
             
             playerSlotIndex++;
         }
+        
+        updatePlayerInventory(commands, playerInventory, tabletData);
+    }
+    
+    private void updatePlayerInventory(@Nonnull UICommandBuilder commands, @Nonnull Inventory playerInventory,
+                                       @Nonnull ExchangeTabletManager.TabletData tabletData) {
+        ItemContainer invStorage = playerInventory.getStorage();
+        ItemContainer hotbar = playerInventory.getHotbar();
+        long remainingCapacity = tabletData.getMaxCapacity() - tabletData.getStoredEchoes();
+        
+        int playerSlotIndex = 0;
+        for (short slot = 0; slot < invStorage.getCapacity(); slot++) {
+            updateInventorySlot(commands, "#PlayerInventory[" + playerSlotIndex++ + "]", invStorage.getItemStack(slot), remainingCapacity);
+        }
+        for (short slot = 0; slot < hotbar.getCapacity(); slot++) {
+            updateInventorySlot(commands, "#PlayerInventory[" + playerSlotIndex++ + "]", hotbar.getItemStack(slot), remainingCapacity);
+        }
+    }
+    
+    private void updateInventorySlot(@Nonnull UICommandBuilder commands, @Nonnull String selector,
+                                     @Nullable ItemStack item, long remainingCapacity) {
+        if (item == null) {
+            sentState.set(commands, selector + " #SlotItem.ItemId", "");
+            sentState.set(commands, selector + " #QuantityLabel.Visible", false);
+            sentState.set(commands, selector + " #EchoesLabel.Visible", false);
+            sentState.set(commands, selector + " #UnaffordableOverlay.Visible", false);
+            sentState.set(commands, selector + ".TooltipTextSpans", "", Message::empty);
+            return;
+        }
+        
+        String itemId = item.getItemId();
+        int quantity = item.getQuantity();
+        sentState.set(commands, selector + " #SlotItem.ItemId", itemId);
+        sentState.set(commands, selector + " #QuantityLabel.Text", String.valueOf(quantity));
+        sentState.set(commands, selector + " #QuantityLabel.Visible", quantity > 1);
+        
+        // Don't allow burning the tablet itself
+        if (itemId.equals("ExchangeTablet")) {
+            sentState.set(commands, selector + " #EchoesLabel.Visible", false);
+            sentState.set(commands, selector + " #UnaffordableOverlay.Visible", false);
+            sentState.set(commands, selector + ".TooltipTextSpans", "tablet",
+                () -> Message.raw("Exchange Tablet (Cannot burn)"));
+            return;
+        }
+        
+        // Show Echo value
+        int echoValue;
+        if (itemId.equals("EchoScroll")) {
+            Long scrollValue = com.echoexchange.item.EchoScrollManager.getScrollValue(item);
+            echoValue = scrollValue != null ? scrollValue.intValue() : 1;
+        } else {
+            echoValue = EchoValueCalculator.getInstance().getEchoValue(itemId);
+        }
+        sentState.set(commands, selector + " #EchoesLabel.Visible", true);
+        sentState.set(commands, selector + " #EchoesLabel.Text", formatQuantity(echoValue));
+        
+        boolean canDeposit = echoValue <= remainingCapacity;
+        sentState.set(commands, selector + " #UnaffordableOverlay.Visible", !canDeposit);
+        String tooltipKey = itemId + "|" + echoValue + "|" + quantity;
+        sentState.set(commands, selector + ".TooltipTextSpans", tooltipKey,
+            () -> session.getTooltip(tooltipKey, () -> getItemTooltipWithEchoes(itemId, echoValue, quantity)));
     }
     
     private void buildInfoPanel(@Nonnull UICommandBuilder commands, @Nonnull UIEventBuilder events,
@@ -653,88 +762,96 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
         // Set the block icon to show the Exchange Tablet item
         commands.set("#BlockIcon.ItemId", "ExchangeTablet");
         
+        var upgradeConfigs = EchoExchangePlugin.getInstance().getModConfig().getUpgradeSlots();
+        
+        // Build upgrade slots dynamically (stored in tablet metadata)
+        commands.clear("#UpgradeSlotsContainer");
+        
+        for (int i = 0; i < upgradeConfigs.size(); i++) {
+            var slotConfig = upgradeConfigs.get(i);
+            String selector = "#UpgradeSlotsContainer[" + i + "]";
+            
+            commands.append("#UpgradeSlotsContainer", "Pages/UpgradeSlot.ui");
+            
+            commands.set(selector + " #RequiredItem.ItemId", slotConfig.getItemId());
+            commands.set(selector + " #RequiredItem.Visible", true);
+            commands.set(selector + " #ResourceTypeIcon.Visible", false);
+            
+            // Bound on every slot; clicks on complete ones are ignored
+            events.addEventBinding(
+                    CustomUIEventBindingType.Activating,
+                    selector,
+                    EventData.of("Action", "upgrade_click:" + i),
+                    false
+            );
+        }
+        
+        updateInfoPanel(commands, playerInventory, tabletData);
+    }
+    
+    private void updateInfoPanel(@Nonnull UICommandBuilder commands, @Nonnull Inventory playerInventory,
+                                 @Nonnull ExchangeTabletManager.TabletData tabletData) {
         var config = EchoExchangePlugin.getInstance().getModConfig();
         var upgradeConfigs = config.getUpgradeSlots();
         int totalUpgrades = upgradeConfigs.size();
         
-        // Calculate completed upgrades from tablet metadata
-        int completedUpgrades = tabletData.getUpgradeLevel();
+        // Only re-checked when this page has changed the tablet
+        boolean[] upgradeComplete = session.getUpgradeCompletion(tabletVersion, tabletData::getUpgradeSlotProgress);
+        int completedUpgrades = session.getCompletedUpgrades(tabletVersion, tabletData::getUpgradeSlotProgress);
         
         // Update upgrade count display
-        commands.set("#UpgradeCount.Text", completedUpgrades + " / " + totalUpgrades);
+        sentState.set(commands, "#UpgradeCount.Text", completedUpgrades + " / " + totalUpgrades);
         
         // Update capacity info
         long currentCapacity = tabletData.getMaxCapacity();
         long nextCapacity = (long) (config.getBaseEchoStorage() * Math.pow(config.getCapacityMultiplier(), completedUpgrades + 1));
         
         if (completedUpgrades < totalUpgrades) {
-            commands.set("#CapacityInfo.Text", "Next: " + formatNumberWithCommas(currentCapacity) + " -> " + formatNumberWithCommas(nextCapacity));
+            sentState.set(commands, "#CapacityInfo.Text", "Next: " + formatNumberWithCommas(currentCapacity) + " -> " + formatNumberWithCommas(nextCapacity));
         } else {
-            commands.set("#CapacityInfo.Text", "Max capacity reached!");
+            sentState.set(commands, "#CapacityInfo.Text", "Max capacity reached!");
         }
         
-        // Build upgrade slots dynamically (stored in tablet metadata)
-        commands.clear("#UpgradeSlotsContainer");
-        
         for (int i = 0; i < totalUpgrades; i++) {
             var slotConfig = upgradeConfigs.get(i);
             String selector = "#UpgradeSlotsContainer[" + i + "]";
             
-            commands.append("#UpgradeSlotsContainer", "Pages/UpgradeSlot.ui");
-            
-            commands.set(selector + " #RequiredItem.ItemId", slotConfig.getItemId());
-            commands.set(selector + " #RequiredItem.Visible", true);
-            commands.set(selector + " #ResourceTypeIcon.Visible", false);
-            
             int requiredAmount = slotConfig.getRequiredAmount();
             int currentProgress = tabletData.getUpgradeSlotProgress(slotConfig.getItemId());
-            boolean isComplete = currentProgress >= requiredAmount;
+            boolean isComplete = upgradeComplete[i];
             
             String progressText = currentProgress + "/" + requiredAmount;
-            commands.set(selector + " #ProgressLabel.Text", progressText);
-            commands.set(selector + " #CompletedOverlay.Visible", isComplete);
+            sentState.set(commands, selector + " #ProgressLabel.Text", progressText);
+            sentState.set(commands, selector + " #CompletedOverlay.Visible", isComplete);
             
-            boolean hasItem = countPlayerItems(playerInventory, slotConfig.getItemId()) > 0;
+            boolean hasItem = session.countItems(playerInventory, slotConfig.getItemId()) > 0;
             boolean canClick = hasItem && !isComplete;
-            commands.set(selector + " #DimmedOverlay.Visible", !hasItem && !isComplete);
-            commands.set(selector + " #ClickableHighlight.Visible", canClick);
-            
-            Item item = Item.getAssetMap().getAsset(slotConfig.getItemId());
-            Message tooltip;
-            if (item != null) {
-                tooltip = Message.translation(item.getTranslationKey());
-            } else {
-                tooltip = Message.raw(slotConfig.getItemId());
-            }
-            
-            if (isComplete) {
-                tooltip = Message.join(tooltip, Message.raw(" (Complete)"));
-            } else {
-                tooltip = Message.join(tooltip, Message.raw(" (" + currentProgress + "/" + requiredAmount + ")"));
-            }
-            commands.set(selector + ".TooltipTextSpans", tooltip);
+            sentState.set(commands, selector + " #DimmedOverlay.Visible", !hasItem && !isComplete);
+            sentState.set(commands, selector + " #ClickableHighlight.Visible", canClick);
             
-            if (!isComplete) {
-                events.addEventBinding(
-                        CustomUIEventBindingType.Activating,
-                        selector,
-                        EventData.of("Action", "upgrade_click:" + i),
-                        false
-                );
-            }
+            sentState.set(commands, selector + ".TooltipTextSpans", isComplete ? "complete" : progressText,
+                () -> session.getTooltip("upgrade|" + slotConfig.getItemId() + "|" + (isComplete ? "complete" : progressText),
+                    () -> getUpgradeTooltip(slotConfig.getItemId(), isComplete, progressText)));
         }
     }
     
-    // Utility methods
-    
-    private String getItemName(String itemId) {
-        Item item = Item.getAssetMap().getAsset(itemId);
-        if (item != null && item.getTranslationProperties() != null) {
-            return item.getTranslationProperties().getName();
+    private Message getUpgradeTooltip(@Nonnull String itemId, boolean isComplete, @Nonnull String progressText) {
+        String translationKey = session.getTranslationKey(itemId);
+        Message tooltip;
+        if (translationKey != null) {
+            tooltip = Message.translation(translationKey);
+        } else {
+            tooltip = Message.raw(itemId);
+        }
+        
+        if (isComplete) {
+            return Message.join(tooltip, Message.raw(" (Complete)"));
         }
-        return itemId;
+        return Message.join(tooltip, Message.raw(" (" + progressText + ")"));
     }
     
+    // Utility methods
+    
     private String formatQuantity(long quantity) {
         if (quantity >= 1000000) {
             return String.format("%.1fM", quantity / 1000000.0);
@@ -772,12 +889,12 @@ public class ExchangeTabletPage extends InteractiveCustomUIPage<ExchangeTabletPa
     }
     
     private Message getItemTooltipWithEchoes(String itemId, int echoValue, int quantity) {
-        Item item = Item.getAssetMap().getAsset(itemId);
+        String translationKey = session.getTranslationKey(itemId);
         Message itemName;
         
-        if (item != null) {
+        if (translationKey != null) {
             // Use translation key to get proper localized name
-            itemName = Message.translation(item.getTranslationKey());
+            itemName = Message.translation(translationKey);
         } else {
             // Fallback: use itemId with underscores replaced
             itemName = Message.raw(itemId.replace("_", " "));
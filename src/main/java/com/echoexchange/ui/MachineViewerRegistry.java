@@ -0,0 +1,91 @@
+package com.echoexchange.ui;
+
+import com.echoexchange.EchoExchangePlugin;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks which Exchange Machine pages are open on each machine, so a change made through one
+ * page reaches everyone else looking at the same machine.
+ * <p>
+ * Pushes are coalesced per machine: the first change schedules a push after the configured
+ * interval and later changes fold into it, so a busy machine is pushed at most once per
+ * interval however many burns happen. Each viewer then sends only what differs from what it
+ * last showed, so a push is a handful of property updates rather than a rebuild.
+ */
+public class MachineViewerRegistry {
+
+    private static MachineViewerRegistry instance;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EchoExchange-ViewerSync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Set<ExchangeMachinePage>> viewersByMachine = new ConcurrentHashMap<>();
+    // Machines with a push scheduled; changes before it runs are folded into it
+    private final Set<String> pendingMachines = ConcurrentHashMap.newKeySet();
+
+    private MachineViewerRegistry() {
+    }
+
+    public static MachineViewerRegistry getInstance() {
+        if (instance == null) {
+            instance = new MachineViewerRegistry();
+        }
+        return instance;
+    }
+
+    public void register(@Nonnull String machineKey, @Nonnull ExchangeMachinePage page) {
+        viewersByMachine.compute(machineKey, (key, viewers) -> {
+            Set<ExchangeMachinePage> updated = viewers != null ? viewers : ConcurrentHashMap.newKeySet();
+            updated.add(page);
+            return updated;
+        });
+    }
+
+    public void unregister(@Nonnull String machineKey, @Nonnull ExchangeMachinePage page) {
+        viewersByMachine.computeIfPresent(machineKey, (key, viewers) -> {
+            viewers.remove(page);
+            return viewers.isEmpty() ? null : viewers;
+        });
+    }
+
+    /**
+     * Schedules a push of the machine's current state to its viewers on the world's executor,
+     * unless one is already pending. The page that made the change has updated itself, so a
+     * machine with a single viewer is not pushed at all.
+     */
+    public void machineChanged(@Nonnull String machineKey, @Nonnull Executor worldExecutor) {
+        Set<ExchangeMachinePage> viewers = viewersByMachine.get(machineKey);
+        if (viewers == null || viewers.size() < 2 || !pendingMachines.add(machineKey)) {
+            return;
+        }
+
+        Runnable push = () -> worldExecutor.execute(() -> {
+            // Cleared before pushing so a change made during the push schedules the next one
+            pendingMachines.remove(machineKey);
+            Set<ExchangeMachinePage> current = viewersByMachine.get(machineKey);
+            if (current != null) {
+                for (ExchangeMachinePage page : current) {
+                    page.pushMachineChanges();
+                }
+            }
+        });
+
+        int interval = EchoExchangePlugin.getInstance().getModConfig().getViewerSyncMillis();
+        if (interval <= 0) {
+            push.run();
+        } else {
+            SCHEDULER.schedule(push, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+}
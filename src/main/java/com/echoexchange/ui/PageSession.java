@@ -0,0 +1,364 @@
+package com.echoexchange.ui;
+
+import com.echoexchange.EchoExchangePlugin;
+import com.echoexchange.config.EchoExchangeConfig;
+import com.echoexchange.echo.EchoValueCalculator;
+import com.echoexchange.echo.EchoValueOrder;
+import com.echoexchange.echo.EchoValueTable;
+import com.echoexchange.item.ItemIdDictionary;
+import com.echoexchange.item.ItemSearchIndex;
+import com.echoexchange.storage.ExchangeMachineManager;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.inventory.Inventory;
+import com.hypixel.hytale.server.core.inventory.ItemStack;
+import com.hypixel.hytale.server.core.inventory.container.ItemContainer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Derived view state for one open Exchange page. Created when the page opens and released
+ * when it is dismissed.
+ * <p>
+ * Each view remembers the inputs it was derived from and is only recomputed when one of them
+ * changes, so the refreshes that follow burning, transmuting or paging are mostly cache hits:
+ * <ul>
+ *     <li>the search text, read from the player's discoveries once on open</li>
+ *     <li>the discoveries matching the search, keyed by the discovery set, search text and language</li>
+ *     <li>the ordered discovery list with its echo values, keyed by the matching set, the value
+ *         table and where the player's balance splits affordable from unaffordable</li>
+ *     <li>which upgrade slots are complete, keyed by the version of the machine or tablet data</li>
+ *     <li>inventory item counts for the upgrade panel, keyed by an inventory version that the
+ *         inventory's own change events bump</li>
+ *     <li>item translation keys and built tooltips, keyed by what they show</li>
+ * </ul>
+ */
+public class PageSession {
+
+    private static final int MAX_TOOLTIPS = 1024;
+
+    private final UUID playerUuid;
+    private String searchText;
+
+    // The discovery set is copy-on-write, so a different instance means different discoveries
+    private BitSet filterDiscoveries;
+    private String filterSearchText;
+    private String filterLanguage;
+    private BitSet filteredItems;
+
+    private BitSet viewItems;
+    private EchoValueTable viewTable;
+    private int viewAffordableFrom = -1;
+    // Only set when the view had to sort items missing from the value order by affordability
+    private long viewUnorderedBalance = Long.MIN_VALUE;
+    private List<DiscoveredItem> discoveredView = Collections.emptyList();
+
+    private List<EchoExchangeConfig.UpgradeSlotConfig> upgradeConfigs;
+    private long upgradeDataVersion = -1;
+    private boolean[] upgradeComplete;
+    private int completedUpgrades;
+
+    private final AtomicLong inventoryVersion = new AtomicLong();
+    private Inventory watchedInventory;
+    private final List<Runnable> inventoryUnwatchers = new ArrayList<>();
+    private long countsVersion = -1;
+    private Map<String, Integer> inventoryCounts;
+
+    // An empty string marks items without an asset
+    private final Map<String, String> translationKeys = new HashMap<>();
+    private final Map<String, Message> tooltips = new HashMap<>();
+
+    public PageSession(@Nonnull UUID playerUuid) {
+        this.playerUuid = playerUuid;
+        this.searchText = ExchangeMachineManager.getInstance().getPlayerSearchQuery(playerUuid);
+    }
+
+    @Nonnull
+    public String getSearchText() {
+        return searchText;
+    }
+
+    /**
+     * Sets the search text and remembers it for the next page the player opens.
+     */
+    public void setSearchText(@Nonnull String searchText) {
+        this.searchText = searchText;
+        ExchangeMachineManager.getInstance().setPlayerSearchQuery(playerUuid, searchText);
+    }
+
+    /**
+     * @return the discovered items matching the search, affordable first and each half ordered
+     *         from high to low value
+     */
+    @Nonnull
+    public List<DiscoveredItem> getDiscoveredView(@Nullable String language, long currentEchoes) {
+        BitSet discoveredItems = ExchangeMachineManager.getInstance().getPlayerDiscoveredBits(playerUuid);
+        if (discoveredItems.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (discoveredItems != filterDiscoveries || !searchText.equals(filterSearchText)
+            || !Objects.equals(language, filterLanguage)) {
+            filteredItems = ItemSearchIndex.getInstance().filter(discoveredItems, searchText, language);
+            filterDiscoveries = discoveredItems;
+            filterSearchText = searchText;
+            filterLanguage = language;
+        }
+
+        // Resolving is a no-op once every visible item is valued, and then hands back the same table.
+        // During the warm-up only items with a value are listed; the page redraws once it finishes
+        EchoValueCalculator calculator = EchoValueCalculator.getInstance();
+        EchoValueTable table = calculator.isReady() ? calculator.resolveAll(filteredItems) : calculator.getValueTable();
+        EchoValueOrder valueOrder = table.getValueOrder();
+        int affordableFrom = valueOrder.firstAffordable(currentEchoes);
+        if (filteredItems == viewItems && table == viewTable && affordableFrom == viewAffordableFrom
+            && (viewUnorderedBalance == Long.MIN_VALUE || viewUnorderedBalance == currentEchoes)) {
+            return discoveredView;
+        }
+
+        // Walk the value order instead of sorting: everything past the split is affordable,
+        // and both halves are already high to low, so affordable items are emitted first
+        ItemIdDictionary dictionary = ItemIdDictionary.getInstance();
+        List<DiscoveredItem> sortedItems = new ArrayList<>(filteredItems.cardinality());
+        collectVisibleItems(valueOrder, affordableFrom, valueOrder.size(), dictionary, sortedItems);
+        collectVisibleItems(valueOrder, 0, affordableFrom, dictionary, sortedItems);
+
+        // Items discovered after the value graph was built are not in the order; rare enough to sort
+        viewUnorderedBalance = Long.MIN_VALUE;
+        if (sortedItems.size() < filteredItems.cardinality()) {
+            appendUnorderedItems(valueOrder, dictionary, sortedItems, currentEchoes);
+            viewUnorderedBalance = currentEchoes;
+        }
+
+        viewItems = filteredItems;
+        viewTable = table;
+        viewAffordableFrom = affordableFrom;
+        discoveredView = Collections.unmodifiableList(sortedItems);
+        return discoveredView;
+    }
+
+    /**
+     * @return which of the configured upgrade slots are complete; only re-checked when the data version changes
+     */
+    @Nonnull
+    public boolean[] getUpgradeCompletion(long dataVersion, @Nonnull ToIntFunction<String> progress) {
+        List<EchoExchangeConfig.UpgradeSlotConfig> configs =
+            EchoExchangePlugin.getInstance().getModConfig().getUpgradeSlots();
+        if (upgradeComplete == null || dataVersion != upgradeDataVersion || configs != upgradeConfigs) {
+            boolean[] complete = new boolean[configs.size()];
+            int completed = 0;
+            for (int i = 0; i < complete.length; i++) {
+                EchoExchangeConfig.UpgradeSlotConfig slotConfig = configs.get(i);
+                complete[i] = progress.applyAsInt(slotConfig.getItemId()) >= slotConfig.getRequiredAmount();
+                if (complete[i]) {
+                    completed++;
+                }
+            }
+            upgradeComplete = complete;
+            completedUpgrades = completed;
+            upgradeConfigs = configs;
+            upgradeDataVersion = dataVersion;
+        }
+        return upgradeComplete;
+    }
+
+    /**
+     * @return how many upgrade slots are complete, from the same cache as {@link #getUpgradeCompletion}
+     */
+    public int getCompletedUpgrades(long dataVersion, @Nonnull ToIntFunction<String> progress) {
+        getUpgradeCompletion(dataVersion, progress);
+        return completedUpgrades;
+    }
+
+    /**
+     * @return a counter that increases whenever the inventory's storage or hotbar changes. The first call
+     *         for an inventory subscribes to its change events, so later calls cost nothing.
+     */
+    public long getInventoryVersion(@Nonnull Inventory inventory) {
+        if (inventory != watchedInventory) {
+            unwatchInventory();
+            watchContainer(inventory.getStorage());
+            watchContainer(inventory.getHotbar());
+            watchedInventory = inventory;
+            inventoryVersion.incrementAndGet();
+        }
+        return inventoryVersion.get();
+    }
+
+    /**
+     * Counts how many of a specific item the player has in their storage and hotbar.
+     */
+    public int countItems(@Nonnull Inventory inventory, @Nonnull String itemId) {
+        long version = getInventoryVersion(inventory);
+        if (inventoryCounts == null || version != countsVersion) {
+            Map<String, Integer> counts = new HashMap<>();
+            addCounts(inventory.getStorage(), counts);
+            addCounts(inventory.getHotbar(), counts);
+            inventoryCounts = counts;
+            countsVersion = version;
+        }
+        return inventoryCounts.getOrDefault(itemId, 0);
+    }
+
+    /**
+     * @return the item's translation key, or null if there is no such item asset
+     */
+    @Nullable
+    public String getTranslationKey(@Nonnull String itemId) {
+        String translationKey = translationKeys.computeIfAbsent(itemId, id -> {
+            Item item = Item.getAssetMap().getAsset(id);
+            return item != null ? item.getTranslationKey() : "";
+        });
+        return translationKey.isEmpty() ? null : translationKey;
+    }
+
+    /**
+     * @return the tooltip built for the signature, building it on first use
+     */
+    @Nonnull
+    public Message getTooltip(@Nonnull String signature, @Nonnull Supplier<Message> builder) {
+        Message tooltip = tooltips.get(signature);
+        if (tooltip == null) {
+            // Signatures include echo values, so a value table change strands old ones
+            if (tooltips.size() >= MAX_TOOLTIPS) {
+                tooltips.clear();
+            }
+            tooltip = builder.get();
+            tooltips.put(signature, tooltip);
+        }
+        return tooltip;
+    }
+
+    /**
+     * Drops every cached view and stops watching the inventory; called when the page is dismissed.
+     */
+    public void release() {
+        filterDiscoveries = null;
+        filterSearchText = null;
+        filteredItems = null;
+        viewItems = null;
+        viewTable = null;
+        viewAffordableFrom = -1;
+        discoveredView = Collections.emptyList();
+        upgradeComplete = null;
+        upgradeConfigs = null;
+        unwatchInventory();
+        inventoryCounts = null;
+        translationKeys.clear();
+        tooltips.clear();
+    }
+
+    /**
+     * @return how many pages the items fill; an empty list still has one
+     */
+    public static int pageCount(int itemCount, int pageSize) {
+        return Math.max(1, (itemCount + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * @return the page number moved into range, e.g. after a search shortened the list
+     */
+    public static int clampPage(int page, int itemCount, int pageSize) {
+        return Math.max(0, Math.min(page, pageCount(itemCount, pageSize) - 1));
+    }
+
+    /**
+     * @return the items on the page, which must already be in range; a view, not a copy
+     */
+    @Nonnull
+    public static <T> List<T> pageOf(@Nonnull List<T> items, int page, int pageSize) {
+        int pageStart = page * pageSize;
+        return items.subList(pageStart, Math.min(items.size(), pageStart + pageSize));
+    }
+
+    private void watchContainer(@Nonnull ItemContainer container) {
+        var registration = container.registerChangeEvent(event -> inventoryVersion.incrementAndGet());
+        inventoryUnwatchers.add(registration::unregister);
+    }
+
+    private void unwatchInventory() {
+        for (Runnable unwatcher : inventoryUnwatchers) {
+            unwatcher.run();
+        }
+        inventoryUnwatchers.clear();
+        watchedInventory = null;
+    }
+
+    private void collectVisibleItems(@Nonnull EchoValueOrder valueOrder, int from, int to,
+                                     @Nonnull ItemIdDictionary dictionary, @Nonnull List<DiscoveredItem> result) {
+        for (int position = from; position < to; position++) {
+            int itemIndex = valueOrder.getItemIndex(position);
+            if (filteredItems.get(itemIndex)) {
+                result.add(new DiscoveredItem(dictionary.getId(itemIndex), valueOrder.getValue(position)));
+            }
+        }
+    }
+
+    private void appendUnorderedItems(@Nonnull EchoValueOrder valueOrder, @Nonnull ItemIdDictionary dictionary,
+                                      @Nonnull List<DiscoveredItem> result, long currentEchoes) {
+        BitSet unordered = (BitSet) filteredItems.clone();
+        for (int position = 0; position < valueOrder.size(); position++) {
+            unordered.clear(valueOrder.getItemIndex(position));
+        }
+        for (int itemIndex = unordered.nextSetBit(0); itemIndex >= 0; itemIndex = unordered.nextSetBit(itemIndex + 1)) {
+            result.add(new DiscoveredItem(dictionary.getId(itemIndex),
+                EchoValueCalculator.getInstance().getEchoValueByIndex(itemIndex)));
+        }
+
+        result.sort((item1, item2) -> {
+            boolean canAfford1 = item1.getEchoValue() <= currentEchoes;
+            boolean canAfford2 = item2.getEchoValue() <= currentEchoes;
+
+            // Affordable items come first
+            if (canAfford1 != canAfford2) {
+                return canAfford1 ? -1 : 1;
+            }
+
+            // Within same affordability, sort by echo value (high to low)
+            return Integer.compare(item2.getEchoValue(), item1.getEchoValue());
+        });
+    }
+
+    private static void addCounts(@Nonnull ItemContainer container, @Nonnull Map<String, Integer> counts) {
+        for (short slot = 0; slot < container.getCapacity(); slot++) {
+            ItemStack stack = container.getItemStack(slot);
+            if (stack != null) {
+                counts.merge(stack.getItemId(), stack.getQuantity(), Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * A discovered item with its echo value resolved once for sorting and display.
+     */
+    public static final class DiscoveredItem {
+        private final String itemId;
+        private final int echoValue;
+
+        DiscoveredItem(@Nonnull String itemId, int echoValue) {
+            this.itemId = itemId;
+            this.echoValue = echoValue;
+        }
+
+        @Nonnull
+        public String getItemId() {
+            return itemId;
+        }
+
+        public int getEchoValue() {
+            return echoValue;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.echoexchange.ui;
+
+import com.echoexchange.EchoExchangePlugin;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Collapses a burst of search input from one page into a single update. The first change of
+ * a burst schedules the update; later changes only replace the pending text, so the update
+ * runs once with whatever was typed last. Once cancelled, nothing pending or submitted later
+ * runs.
+ */
+public class SearchDebouncer {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EchoExchange-SearchDebounce");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IntSupplier delayMillis;
+    private final AtomicReference<String> pendingText = new AtomicReference<>();
+    private volatile ScheduledFuture<?> pendingFlush;
+    private volatile boolean cancelled;
+
+    public SearchDebouncer() {
+        this(() -> EchoExchangePlugin.getInstance().getModConfig().getSearchDebounceMillis());
+    }
+
+    SearchDebouncer(@Nonnull IntSupplier delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Queues the search text and, if no update is pending yet, schedules one on the executor
+     * after the configured delay.
+     */
+    public void submit(@Nonnull String text, @Nonnull Executor executor, @Nonnull Consumer<String> update) {
+        if (cancelled || pendingText.getAndSet(text) != null) {
+            return;
+        }
+
+        Runnable flush = () -> executor.execute(() -> {
+            String latest = pendingText.getAndSet(null);
+            if (latest != null && !cancelled) {
+                update.accept(latest);
+            }
+        });
+
+        int delay = delayMillis.getAsInt();
+        if (delay <= 0) {
+            flush.run();
+        } else {
+            pendingFlush = SCHEDULER.schedule(flush, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Drops the pending update, if any, and ignores every later submit; called when the page
+     * is dismissed.
+     */
+    public void cancel() {
+        cancelled = true;
+        pendingText.set(null);
+        ScheduledFuture<?> flush = pendingFlush;
+        if (flush != null) {
+            flush.cancel(false);
+        }
+    }
+}
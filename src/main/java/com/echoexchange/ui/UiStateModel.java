@@ -0,0 +1,66 @@
+package com.echoexchange.ui;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The property values a page last sent to its client, keyed by "selector.property".
+ * Pages route their property updates through this so a refresh after an action only
+ * carries what actually changed instead of re-sending the whole page.
+ */
+public class UiStateModel {
+
+    private final Map<String, Object> sent = new HashMap<>();
+
+    /**
+     * Forgets everything; call when the client is sent a fresh page.
+     */
+    public void reset() {
+        sent.clear();
+    }
+
+    /**
+     * Forgets the properties of elements under the selector, for when they are cleared and appended again.
+     */
+    public void forget(@Nonnull String selectorPrefix) {
+        sent.keySet().removeIf(key -> key.startsWith(selectorPrefix));
+    }
+
+    public void set(@Nonnull UICommandBuilder commands, @Nonnull String key, @Nonnull String value) {
+        if (changed(key, value)) {
+            commands.set(key, value);
+        }
+    }
+
+    public void set(@Nonnull UICommandBuilder commands, @Nonnull String key, boolean value) {
+        if (changed(key, value)) {
+            commands.set(key, value);
+        }
+    }
+
+    public void set(@Nonnull UICommandBuilder commands, @Nonnull String key, double value) {
+        if (changed(key, value)) {
+            commands.set(key, value);
+        }
+    }
+
+    /**
+     * Messages are compared by a signature of whatever they were built from, since building
+     * the message is most of the cost this avoids.
+     */
+    public void set(@Nonnull UICommandBuilder commands, @Nonnull String key, @Nonnull String signature,
+                    @Nonnull java.util.function.Supplier<Message> message) {
+        if (changed(key, signature)) {
+            commands.set(key, message.get());
+        }
+    }
+
+    private boolean changed(@Nonnull String key, @Nonnull Object value) {
+        return !Objects.equals(sent.put(key, value), value);
+    }
+}
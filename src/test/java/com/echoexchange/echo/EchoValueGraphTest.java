@@ -0,0 +1,284 @@
+package com.echoexchange.echo;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EchoValueGraphTest {
+
+    @Test
+    void pricesRecipesFromTheirInputs() {
+        // 0 log, 1 plank (log -> 4), 2 stick (2 planks -> 4), 3 table (4 planks + 2 sticks)
+        GraphBuilder builder = new GraphBuilder(4);
+        builder.fixed(0, 8);
+        builder.recipe(1, 4, 0, 1);
+        builder.recipe(2, 4, 1, 2);
+        builder.recipe(3, 1, 1, 4, 2, 2);
+
+        assertArrayEquals(new long[]{8, 2, 1, 10}, builder.build().solveAll());
+    }
+
+    @Test
+    void itemsWithoutRecipesKeepTheirBaseValue() {
+        GraphBuilder builder = new GraphBuilder(2);
+        builder.base(0, 42);
+        builder.recipe(1, 1, 0, 3);
+
+        assertArrayEquals(new long[]{42, 126}, builder.build().solveAll());
+    }
+
+    @Test
+    void cyclesFormOneComponentAfterTheirDependencies() {
+        // 0 ore, 1 ingot (from a block, or from ore), 2 block (9 ingots)
+        GraphBuilder builder = new GraphBuilder(3);
+        builder.fixed(0, 10);
+        builder.recipe(1, 9, 2, 1);
+        builder.recipe(1, 1, 0, 1);
+        builder.recipe(2, 1, 1, 9);
+        EchoValueGraph graph = builder.build();
+
+        BitSet all = new BitSet();
+        all.set(0, graph.getNodeCount());
+        List<int[]> components = graph.findComponents(all);
+        assertEquals(2, components.size());
+        assertArrayEquals(new int[]{0}, components.get(0));
+        assertArrayEquals(new int[]{1, 2}, components.get(1));
+
+        // The ingot takes the ore recipe, the first one whose inputs are priced
+        assertArrayEquals(new long[]{10, 10, 90}, graph.solveAll());
+    }
+
+    @Test
+    void closedCyclesPriceUnresolvedInputsAtBaseValue() {
+        // Each item is only made from the other
+        GraphBuilder builder = new GraphBuilder(2);
+        builder.base(0, 5);
+        builder.base(1, 7);
+        builder.recipe(0, 1, 1, 1);
+        builder.recipe(1, 1, 0, 2);
+
+        assertArrayEquals(new long[]{7, 10}, builder.build().solveAll());
+    }
+
+    @Test
+    void resourceTypesCostTheirCheapestMember() {
+        // 0 oak and 1 birch are both "Wood", 2 takes two of any wood
+        GraphBuilder builder = new GraphBuilder(3, "Wood");
+        builder.fixed(0, 5);
+        builder.fixed(1, 3);
+        builder.recipe(3, 1, 0, 1, 1, 1);
+        builder.recipe(2, 1, 3, 2);
+
+        long[] values = builder.build().solveAll();
+        assertEquals(3, values[3]);
+        assertEquals(6, values[2]);
+    }
+
+    @Test
+    void valuesSaturateInsteadOfOverflowing() {
+        GraphBuilder builder = new GraphBuilder(2);
+        builder.fixed(0, Long.MAX_VALUE / 2);
+        builder.recipe(1, 1, 0, 4);
+
+        assertEquals(Long.MAX_VALUE, builder.build().solveAll()[1]);
+    }
+
+    @Test
+    void partialSolveReusesKnownValues() {
+        GraphBuilder builder = new GraphBuilder(3);
+        builder.fixed(0, 8);
+        builder.recipe(1, 1, 0, 2);
+        builder.recipe(2, 1, 1, 3);
+        EchoValueGraph graph = builder.build();
+
+        long[] values = graph.solveAll();
+        // Pretend the middle item was repriced; only what depends on it is solved again
+        BitSet seeds = new BitSet();
+        seeds.set(1);
+        BitSet targets = graph.collectDependents(seeds);
+        assertTrue(targets.get(1));
+        assertTrue(targets.get(2));
+        assertFalse(targets.get(0));
+
+        values[1] = 0;
+        values[2] = 0;
+        graph.solve(targets, values);
+        assertArrayEquals(new long[]{8, 16, 48}, values);
+    }
+
+    @Test
+    void unchangedGraphHasNothingToRevalue() {
+        assertTrue(woodGraph(5, 3).build().changedSince(woodGraph(5, 3).build()).isEmpty());
+    }
+
+    @Test
+    void changedSinceFindsRepricedItemsAndNewOnes() {
+        EchoValueGraph previous = woodGraph(5, 3).build();
+        GraphBuilder builder = woodGraph(5, 2);
+        EchoValueGraph current = builder.build();
+
+        BitSet changed = current.changedSince(previous);
+        assertEquals(1, changed.cardinality());
+        assertTrue(changed.get(1));
+
+        // Revaluing it reaches the resource type and what is crafted from it, not the other member
+        BitSet dependents = current.collectDependents(changed);
+        assertTrue(dependents.get(3));
+        assertTrue(dependents.get(2));
+        assertFalse(dependents.get(0));
+    }
+
+    @Test
+    void changedSinceMatchesResourceTypesById() {
+        // An item added before the resource type shifts its node, but its pricing is the same
+        GraphBuilder grown = new GraphBuilder(4, "Wood");
+        grown.fixed(0, 5);
+        grown.fixed(1, 3);
+        grown.recipe(4, 1, 0, 1, 1, 1);
+        grown.recipe(2, 1, 4, 2);
+
+        BitSet changed = grown.build().changedSince(woodGraph(5, 3).build());
+        assertEquals(1, changed.cardinality());
+        assertTrue(changed.get(3));
+    }
+
+    /**
+     * 0 oak and 1 birch are both "Wood" (node 3), 2 takes two of any wood.
+     */
+    @Nonnull
+    private static GraphBuilder woodGraph(long oak, long birch) {
+        GraphBuilder builder = new GraphBuilder(3, "Wood");
+        builder.fixed(0, oak);
+        builder.fixed(1, birch);
+        builder.recipe(3, 1, 0, 1, 1, 1);
+        builder.recipe(2, 1, 3, 2);
+        return builder;
+    }
+
+    @Test
+    void parallelSolveMatchesSequential() {
+        Random random = new Random(12345);
+        int itemCount = 2000;
+        GraphBuilder builder = new GraphBuilder(itemCount, "Resource_A", "Resource_B");
+        for (int node = 0; node < itemCount; node++) {
+            if (random.nextInt(10) == 0) {
+                builder.fixed(node, 1 + random.nextInt(1000));
+                continue;
+            }
+            builder.base(node, 1 + random.nextInt(100));
+            int recipes = random.nextInt(3);
+            for (int r = 0; r < recipes; r++) {
+                int inputs = 1 + random.nextInt(4);
+                int[] pairs = new int[inputs * 2];
+                for (int i = 0; i < inputs; i++) {
+                    // Mostly earlier items, sometimes later ones so there are cycles
+                    pairs[i * 2] = random.nextInt(5) == 0 ? random.nextInt(itemCount + 2) : random.nextInt(node + 1);
+                    pairs[i * 2 + 1] = 1 + random.nextInt(8);
+                }
+                builder.recipe(node, 1 + random.nextInt(4), pairs);
+            }
+        }
+        builder.recipe(itemCount, 1, 1, 1, 2, 1, 3, 1);
+        builder.recipe(itemCount + 1, 1, 4, 1, 5, 1);
+        EchoValueGraph graph = builder.build();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long[] sequential = graph.solveAll();
+            assertArrayEquals(sequential, graph.solveAllParallel(pool));
+            for (long value : sequential) {
+                assertTrue(value >= 1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Lays recipes out in the graph's flat arrays. Nodes default to a base value of 1; resource
+     * type nodes follow the items and take their members as a single recipe's inputs.
+     */
+    private static final class GraphBuilder {
+        private final int itemCount;
+        private final String[] resourceIds;
+        private final boolean[] fixed;
+        private final long[] baseValue;
+        private final List<List<int[]>> recipesByNode = new ArrayList<>();
+
+        GraphBuilder(int itemCount, @Nonnull String... resourceIds) {
+            this.itemCount = itemCount;
+            this.resourceIds = resourceIds;
+            int nodeCount = itemCount + resourceIds.length;
+            this.fixed = new boolean[nodeCount];
+            this.baseValue = new long[nodeCount];
+            for (int node = 0; node < nodeCount; node++) {
+                baseValue[node] = 1;
+                recipesByNode.add(new ArrayList<>());
+            }
+        }
+
+        void base(int node, long value) {
+            baseValue[node] = value;
+        }
+
+        void fixed(int node, long value) {
+            fixed[node] = true;
+            baseValue[node] = value;
+        }
+
+        /**
+         * @param inputs pairs of input node and quantity
+         */
+        void recipe(int node, int outputQuantity, @Nonnull int... inputs) {
+            int[] recipe = new int[inputs.length + 1];
+            recipe[0] = outputQuantity;
+            System.arraycopy(inputs, 0, recipe, 1, inputs.length);
+            recipesByNode.get(node).add(recipe);
+        }
+
+        @Nonnull
+        EchoValueGraph build() {
+            int nodeCount = baseValue.length;
+            int[] recipeStart = new int[nodeCount + 1];
+            List<Integer> outputQuantity = new ArrayList<>();
+            List<Integer> inputStart = new ArrayList<>();
+            List<Integer> inputNode = new ArrayList<>();
+            List<Integer> inputQuantity = new ArrayList<>();
+
+            for (int node = 0; node < nodeCount; node++) {
+                recipeStart[node] = outputQuantity.size();
+                if (fixed[node]) {
+                    continue;
+                }
+                for (int[] recipe : recipesByNode.get(node)) {
+                    outputQuantity.add(recipe[0]);
+                    inputStart.add(inputNode.size());
+                    for (int i = 1; i < recipe.length; i += 2) {
+                        inputNode.add(recipe[i]);
+                        inputQuantity.add(recipe[i + 1]);
+                    }
+                }
+            }
+            recipeStart[nodeCount] = outputQuantity.size();
+            inputStart.add(inputNode.size());
+
+            return new EchoValueGraph(itemCount, resourceIds, fixed, baseValue, recipeStart,
+                toArray(outputQuantity), toArray(inputStart), toArray(inputNode), toArray(inputQuantity));
+        }
+
+        @Nonnull
+        private static int[] toArray(@Nonnull List<Integer> list) {
+            return list.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
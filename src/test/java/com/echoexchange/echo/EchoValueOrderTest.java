@@ -0,0 +1,67 @@
+package com.echoexchange.echo;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EchoValueOrderTest {
+
+    private static final long UNKNOWN = EchoValueTable.UNKNOWN;
+
+    @Test
+    void ordersKnownItemsByValueThenIndex() {
+        EchoValueOrder order = EchoValueTable.of(new long[]{5, UNKNOWN, 9, 5, 1}).getValueOrder();
+
+        assertArrayEquals(new int[]{2, 0, 3, 4}, itemIndices(order));
+        assertArrayEquals(new int[]{9, 5, 5, 1}, values(order));
+    }
+
+    @Test
+    void clampsValuesToIntRange() {
+        EchoValueOrder order = EchoValueTable.of(new long[]{3, Long.MAX_VALUE, (long) Integer.MAX_VALUE + 1}).getValueOrder();
+
+        assertArrayEquals(new int[]{1, 2, 0}, itemIndices(order));
+        assertArrayEquals(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, 3}, values(order));
+    }
+
+    @Test
+    void splitsAffordableFromUnaffordable() {
+        EchoValueOrder order = EchoValueTable.of(new long[]{100, 50, 50, 10}).getValueOrder();
+
+        assertEquals(0, order.firstAffordable(1000));
+        assertEquals(0, order.firstAffordable(100));
+        assertEquals(1, order.firstAffordable(99));
+        assertEquals(1, order.firstAffordable(50));
+        assertEquals(3, order.firstAffordable(49));
+        assertEquals(4, order.firstAffordable(0));
+    }
+
+    @Test
+    void emptyTableHasAnEmptyOrder() {
+        EchoValueOrder order = EchoValueTable.EMPTY.getValueOrder();
+
+        assertEquals(0, order.size());
+        assertEquals(0, order.firstAffordable(Long.MAX_VALUE));
+    }
+
+    @Nonnull
+    private static int[] itemIndices(@Nonnull EchoValueOrder order) {
+        int[] indices = new int[order.size()];
+        for (int position = 0; position < indices.length; position++) {
+            indices[position] = order.getItemIndex(position);
+        }
+        return indices;
+    }
+
+    @Nonnull
+    private static int[] values(@Nonnull EchoValueOrder order) {
+        int[] values = new int[order.size()];
+        for (int position = 0; position < values.length; position++) {
+            values[position] = order.getValue(position);
+        }
+        return values;
+    }
+}
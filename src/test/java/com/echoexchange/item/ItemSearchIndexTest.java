@@ -0,0 +1,99 @@
+package com.echoexchange.item;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ItemSearchIndexTest {
+
+    private static final String[] SEARCH_TEXT = {
+        "oak log\nwood_log_oak",
+        "iron ingot\ningredient_bar_iron",
+        "iron sword\nweapon_sword_iron",
+        "gold ingot\ningredient_bar_gold",
+        "torch\nfurniture_torch"
+    };
+
+    private final ItemSearchIndex.LanguageIndex index = ItemSearchIndex.LanguageIndex.of("en-US", SEARCH_TEXT);
+
+    @Test
+    void matchesNamesAndIds() {
+        assertEquals(bits(1, 2), index.filter(all(), "iron"));
+        assertEquals(bits(1, 3), index.filter(all(), "ingot"));
+        assertEquals(bits(2), index.filter(all(), "weapon_"));
+    }
+
+    @Test
+    void shortQueriesCheckEveryItem() {
+        assertEquals(bits(2, 4), index.filter(all(), "or"));
+    }
+
+    @Test
+    void onlyTheGivenItemsMatch() {
+        assertEquals(bits(2), index.filter(bits(0, 2, 4), "iron"));
+    }
+
+    @Test
+    void unknownTrigramMatchesNothing() {
+        assertTrue(index.filter(all(), "diamond").isEmpty());
+    }
+
+    @Test
+    void matchNeverSpansTheNameAndId() {
+        assertTrue(index.filter(all(), "torch\nfurniture").get(4));
+        assertTrue(index.filter(all(), "torchfurniture").isEmpty());
+    }
+
+    @Test
+    void matchesAPlainScanOfRandomText() {
+        Random random = new Random(7);
+        String[] searchText = new String[200];
+        for (int i = 0; i < searchText.length; i++) {
+            searchText[i] = randomText(random, 4 + random.nextInt(12));
+        }
+        ItemSearchIndex.LanguageIndex randomIndex = ItemSearchIndex.LanguageIndex.of("en-US", searchText);
+        BitSet items = new BitSet();
+        items.set(0, searchText.length);
+
+        for (int i = 0; i < 500; i++) {
+            String query = randomText(random, 1 + random.nextInt(4));
+            BitSet expected = new BitSet();
+            for (int item = 0; item < searchText.length; item++) {
+                if (searchText[item].contains(query)) {
+                    expected.set(item);
+                }
+            }
+            assertEquals(expected, randomIndex.filter(items, query));
+        }
+    }
+
+    @Nonnull
+    private static String randomText(@Nonnull Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(4)));
+        }
+        return text.toString();
+    }
+
+    @Nonnull
+    private static BitSet all() {
+        BitSet items = new BitSet();
+        items.set(0, SEARCH_TEXT.length);
+        return items;
+    }
+
+    @Nonnull
+    private static BitSet bits(int... indices) {
+        BitSet bits = new BitSet();
+        for (int index : indices) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
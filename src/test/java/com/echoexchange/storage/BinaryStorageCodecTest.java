@@ -0,0 +1,142 @@
+package com.echoexchange.storage;
+
+import com.echoexchange.item.ItemIdDictionary;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryStorageCodecTest {
+
+    private static final List<String> ITEMS = new ArrayList<>();
+
+    @BeforeAll
+    static void seedDictionary() {
+        for (int i = 0; i < 60; i++) {
+            ITEMS.add(String.format("Test_Item_%02d", i));
+        }
+        ItemIdDictionary.initialize(ITEMS);
+    }
+
+    @Test
+    void machinesRoundTrip() throws IOException {
+        // Two of sixty items is written as an index list, forty as a bitmap
+        ExchangeMachineManager.MachineData sparse = machine(5_000_000_000L, ITEMS.subList(10, 12));
+        sparse.loadUpgradeSlotProgress("Ingredient_Bar_Iron", 25);
+        sparse.loadUpgradeSlotProgress(ITEMS.get(10), 3);
+        ExchangeMachineManager.MachineData dense = machine(0, ITEMS.subList(0, 40));
+        ExchangeMachineManager.MachineData empty = machine(1, List.of());
+
+        ExchangeMachineManager.MachineStorage storage = new ExchangeMachineManager.MachineStorage();
+        storage.world = "default";
+        storage.machines = List.of(
+            new ExchangeMachineManager.MachineEntry(MachinePosition.toKey("default", MachinePosition.pack(1, 64, -3)), sparse),
+            new ExchangeMachineManager.MachineEntry(MachinePosition.toKey("default", MachinePosition.pack(-1000, 0, 250_000)), dense),
+            new ExchangeMachineManager.MachineEntry(MachinePosition.toKey("default", MachinePosition.pack(0, 319, 0)), empty));
+
+        ExchangeMachineManager.MachineStorage read = BinaryStorageCodec.readMachines(
+            new ByteArrayInputStream(writeMachines(storage)));
+
+        assertEquals("default", read.world);
+        assertEquals(storage.machines.size(), read.machines.size());
+        for (int i = 0; i < storage.machines.size(); i++) {
+            ExchangeMachineManager.MachineEntry expected = storage.machines.get(i);
+            ExchangeMachineManager.MachineEntry actual = read.machines.get(i);
+            assertEquals(expected.key, actual.key);
+            assertEquals(expected.data.getStoredEchoes(), actual.data.getStoredEchoes());
+            assertEquals(expected.data.getDiscoveredItems(), actual.data.getDiscoveredItems());
+            assertEquals(expected.data.getUpgradeSlotProgressMap(), actual.data.getUpgradeSlotProgressMap());
+        }
+        assertEquals(Map.of("Ingredient_Bar_Iron", 25, ITEMS.get(10), 3), read.machines.get(0).data.getUpgradeSlotProgressMap());
+    }
+
+    @Test
+    void discoveriesRoundTrip() throws IOException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        ExchangeMachineManager.PlayerDiscoveriesStorage storage = new ExchangeMachineManager.PlayerDiscoveriesStorage();
+        storage.players = List.of(
+            new ExchangeMachineManager.PlayerDiscoveriesEntry(first, discoveries(ITEMS.subList(5, 50), "bar")),
+            new ExchangeMachineManager.PlayerDiscoveriesEntry(second, discoveries(List.of(ITEMS.get(59)), "")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryStorageCodec.writeDiscoveries(out, storage);
+        ExchangeMachineManager.PlayerDiscoveriesStorage read = BinaryStorageCodec.readDiscoveries(
+            new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, read.players.size());
+        assertEquals(first, read.players.get(0).playerUuid);
+        assertEquals(Set.copyOf(ITEMS.subList(5, 50)), read.players.get(0).discoveries.getDiscoveredItems());
+        assertEquals("bar", read.players.get(0).discoveries.getSearchQuery());
+        assertEquals(second, read.players.get(1).playerUuid);
+        assertEquals(Set.of(ITEMS.get(59)), read.players.get(1).discoveries.getDiscoveredItems());
+        assertEquals("", read.players.get(1).discoveries.getSearchQuery());
+    }
+
+    @Test
+    void readingKeepsIdsTheDictionaryHasNotSeen() throws IOException {
+        ExchangeMachineManager.MachineData data = machine(10, List.of(ITEMS.get(0)));
+        ExchangeMachineManager.MachineStorage storage = new ExchangeMachineManager.MachineStorage();
+        storage.world = "default";
+        storage.machines = List.of(new ExchangeMachineManager.MachineEntry(
+            MachinePosition.toKey("default", MachinePosition.pack(0, 0, 0)), data));
+        byte[] bytes = writeMachines(storage);
+
+        // A dictionary without the item, as after the asset was removed; reading adds it back
+        ItemIdDictionary.initialize(ITEMS.subList(1, ITEMS.size()));
+        try {
+            ExchangeMachineManager.MachineStorage read = BinaryStorageCodec.readMachines(new ByteArrayInputStream(bytes));
+            assertEquals(Set.of(ITEMS.get(0)), read.machines.get(0).data.getDiscoveredItems());
+        } finally {
+            ItemIdDictionary.initialize(ITEMS);
+        }
+    }
+
+    @Test
+    void rejectsOtherFilesAndVersions() throws IOException {
+        ExchangeMachineManager.MachineStorage storage = new ExchangeMachineManager.MachineStorage();
+        storage.world = "default";
+        byte[] machines = writeMachines(storage);
+
+        assertThrows(IOException.class, () -> BinaryStorageCodec.readDiscoveries(new ByteArrayInputStream(machines)));
+
+        // The version follows the four byte magic
+        byte[] newer = machines.clone();
+        newer[4] = 2;
+        assertThrows(IOException.class, () -> BinaryStorageCodec.readMachines(new ByteArrayInputStream(newer)));
+    }
+
+    @Nonnull
+    private static ExchangeMachineManager.MachineData machine(long echoes, @Nonnull List<String> discovered) {
+        ExchangeMachineManager.MachineData data = new ExchangeMachineManager.MachineData();
+        data.loadStoredEchoes(echoes);
+        data.setDiscoveredBits(ItemIdDictionary.getInstance().toBits(discovered));
+        return data;
+    }
+
+    @Nonnull
+    private static ExchangeMachineManager.PlayerDiscoveries discoveries(@Nonnull List<String> discovered, @Nonnull String query) {
+        ExchangeMachineManager.PlayerDiscoveries discoveries = new ExchangeMachineManager.PlayerDiscoveries();
+        discoveries.setDiscoveredBits(ItemIdDictionary.getInstance().toBits(discovered));
+        discoveries.loadSearchQuery(query);
+        return discoveries;
+    }
+
+    @Nonnull
+    private static byte[] writeMachines(@Nonnull ExchangeMachineManager.MachineStorage storage) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryStorageCodec.writeMachines(out, storage);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package com.echoexchange.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadedPlayersTest {
+
+    private static final long EVICT_AFTER = TimeUnit.MINUTES.toMillis(10);
+    private static final long LATER = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+
+    private final ExchangeMachineManager.LoadedPlayers players = new ExchangeMachineManager.LoadedPlayers();
+    private final UUID player = UUID.randomUUID();
+    private final List<UUID> saved = new ArrayList<>();
+
+    @Test
+    void loadsOnceAndKeepsTheInstance() {
+        ExchangeMachineManager.PlayerDiscoveries first = players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries());
+
+        ExchangeMachineManager.PlayerDiscoveries second = players.get(player, uuid -> {
+            throw new AssertionError("loaded twice");
+        });
+
+        assertSame(first, second);
+    }
+
+    @Test
+    void onlinePlayersAreNeverEvicted() {
+        players.connect(player);
+        players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries());
+
+        assertEquals(0, evict());
+        assertNotNull(players.find(player));
+    }
+
+    @Test
+    void offlinePlayerIsSavedThenEvicted() {
+        players.connect(player);
+        players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries()).setSearchQuery("iron");
+        players.disconnect(player);
+
+        assertEquals(1, evict());
+        assertEquals(List.of(player), saved);
+        assertNull(players.find(player));
+    }
+
+    @Test
+    void recentlyOfflinePlayerStaysLoaded() {
+        players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries());
+        players.disconnect(player);
+
+        assertEquals(0, players.evict(System.currentTimeMillis(), EVICT_AFTER, this::save));
+        assertNotNull(players.find(player));
+    }
+
+    @Test
+    void playerLoadedWhileOfflineAgesOut() {
+        players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries());
+
+        assertEquals(1, evict());
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    void reconnectClearsTheOfflineTime() {
+        players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries());
+        players.disconnect(player);
+        players.connect(player);
+
+        assertEquals(0, evict());
+        assertNotNull(players.find(player));
+    }
+
+    @Test
+    void failedSaveKeepsThePlayerLoaded() {
+        players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries()).setSearchQuery("iron");
+        players.disconnect(player);
+
+        assertEquals(0, players.evict(LATER, EVICT_AFTER, (uuid, discoveries) -> false));
+        assertNotNull(players.find(player));
+    }
+
+    @Test
+    void reconnectDuringTheSaveKeepsThePlayerLoaded() {
+        ExchangeMachineManager.PlayerDiscoveries discoveries =
+            players.get(player, uuid -> new ExchangeMachineManager.PlayerDiscoveries());
+        discoveries.setSearchQuery("iron");
+        players.disconnect(player);
+
+        int evicted = players.evict(LATER, EVICT_AFTER, (uuid, written) -> {
+            written.markClean();
+            players.connect(player);
+            written.setSearchQuery("gold");
+            return true;
+        });
+
+        assertEquals(0, evicted);
+        assertSame(discoveries, players.find(player));
+    }
+
+    private int evict() {
+        return players.evict(LATER, EVICT_AFTER, this::save);
+    }
+
+    private boolean save(UUID playerUuid, ExchangeMachineManager.PlayerDiscoveries discoveries) {
+        saved.add(playerUuid);
+        discoveries.markClean();
+        return true;
+    }
+}
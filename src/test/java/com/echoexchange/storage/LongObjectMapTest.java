@@ -0,0 +1,73 @@
+package com.echoexchange.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LongObjectMapTest {
+
+    @Test
+    void putReplacesAndReturnsThePreviousValue() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        assertNull(map.put(7L, "a"));
+        assertEquals("a", map.put(7L, "b"));
+
+        assertEquals("b", map.get(7L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removeReturnsTheValueAndForgetsTheKey() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(7L, "a");
+
+        assertEquals("a", map.remove(7L));
+        assertNull(map.remove(7L));
+        assertNull(map.get(7L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void removingFromACollisionChainKeepsTheRestReachable() {
+        // Small capacity and many keys, so probe chains overlap and wrap around the table
+        LongObjectMap<Long> map = new LongObjectMap<>(4);
+        for (long key = 0; key < 64; key++) {
+            map.put(key << 32, key);
+        }
+
+        for (long key = 0; key < 64; key += 2) {
+            assertEquals(Long.valueOf(key), map.remove(key << 32));
+        }
+
+        for (long key = 0; key < 64; key++) {
+            assertEquals(key % 2 == 0 ? null : key, map.get(key << 32));
+        }
+        assertEquals(32, map.size());
+    }
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        LongObjectMap<Integer> map = new LongObjectMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            long key = MachinePosition.pack(random.nextInt(32) - 16, random.nextInt(8), random.nextInt(32) - 16);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        map.forEach((key, value) -> assertEquals(expected.get(key), value));
+    }
+}
@@ -0,0 +1,160 @@
+package com.echoexchange.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MachineJournalTest {
+
+    private static final String MACHINE = "default:1,64,-3";
+
+    @TempDir
+    File folder;
+
+    @Test
+    void replaysEveryRecordType() throws IOException {
+        UUID player = UUID.randomUUID();
+        MachineJournal journal = open(Long.MAX_VALUE);
+        journal.appendMachineEchoes(MACHINE, 5_000_000_000L);
+        journal.appendMachineDiscover(MACHINE, "Ingredient_Stick");
+        journal.appendMachineUpgrade(MACHINE, "Ingredient_Bar_Iron", 12);
+        journal.appendMachineRemove(MACHINE);
+        journal.appendPlayerDiscover(player, "Rubble_Stone");
+        journal.close();
+
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(5, reopen().replay(handler));
+        assertEquals(List.of(
+            "echoes " + MACHINE + " 5000000000",
+            "discover " + MACHINE + " Ingredient_Stick",
+            "upgrade " + MACHINE + " Ingredient_Bar_Iron 12",
+            "remove " + MACHINE,
+            "player " + player + " Rubble_Stone"), handler.records);
+    }
+
+    @Test
+    void replaysSegmentsInOrder() throws IOException {
+        MachineJournal journal = open(Long.MAX_VALUE);
+        journal.appendMachineEchoes(MACHINE, 1);
+        journal.roll();
+        journal.appendMachineEchoes(MACHINE, 2);
+        journal.roll();
+        journal.appendMachineEchoes(MACHINE, 3);
+        journal.close();
+
+        RecordingHandler handler = new RecordingHandler();
+        reopen().replay(handler);
+        assertEquals(List.of("echoes " + MACHINE + " 1", "echoes " + MACHINE + " 2", "echoes " + MACHINE + " 3"),
+            handler.records);
+    }
+
+    @Test
+    void skipsTheSegmentBeingWritten() throws IOException {
+        MachineJournal journal = open(Long.MAX_VALUE);
+        journal.appendMachineEchoes(MACHINE, 1);
+        journal.flush();
+
+        assertEquals(0, journal.replay(new RecordingHandler()));
+        journal.close();
+    }
+
+    @Test
+    void reopeningStartsAfterExistingSegments() throws IOException {
+        MachineJournal first = open(Long.MAX_VALUE);
+        first.appendMachineEchoes(MACHINE, 1);
+        first.close();
+        long firstSegment = first.getLastSegment();
+
+        MachineJournal second = open(Long.MAX_VALUE);
+        assertEquals(firstSegment + 1, second.getLastSegment());
+        second.appendMachineEchoes(MACHINE, 2);
+        second.close();
+
+        RecordingHandler handler = new RecordingHandler();
+        reopen().replay(handler);
+        assertEquals(List.of("echoes " + MACHINE + " 1", "echoes " + MACHINE + " 2"), handler.records);
+    }
+
+    @Test
+    void deletedSegmentsAreNotReplayed() throws IOException {
+        MachineJournal journal = open(Long.MAX_VALUE);
+        journal.appendMachineEchoes(MACHINE, 1);
+        long sealed = journal.roll();
+        journal.appendMachineEchoes(MACHINE, 2);
+        journal.deleteSegmentsThrough(sealed);
+        journal.close();
+
+        RecordingHandler handler = new RecordingHandler();
+        reopen().replay(handler);
+        assertEquals(List.of("echoes " + MACHINE + " 2"), handler.records);
+    }
+
+    @Test
+    void checkpointIsDueOnceTheSegmentIsFull() throws IOException {
+        MachineJournal journal = open(32);
+        assertFalse(journal.isCheckpointDue());
+
+        journal.appendMachineEchoes(MACHINE, 1);
+        assertFalse(journal.isCheckpointDue());
+        journal.appendMachineEchoes(MACHINE, 2);
+        assertTrue(journal.isCheckpointDue());
+
+        journal.roll();
+        assertFalse(journal.isCheckpointDue());
+        journal.close();
+    }
+
+    @Nonnull
+    private MachineJournal open(long segmentMaxBytes) throws IOException {
+        MachineJournal journal = new MachineJournal(folder, segmentMaxBytes, Long.MAX_VALUE);
+        journal.open();
+        return journal;
+    }
+
+    /**
+     * @return a journal over the same folder that has not opened a segment, so it replays all of them
+     */
+    @Nonnull
+    private MachineJournal reopen() {
+        return new MachineJournal(folder, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    private static final class RecordingHandler implements MachineJournal.ReplayHandler {
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void machineEchoes(@Nonnull String key, long echoes) {
+            records.add("echoes " + key + " " + echoes);
+        }
+
+        @Override
+        public void machineDiscover(@Nonnull String key, @Nonnull String itemId) {
+            records.add("discover " + key + " " + itemId);
+        }
+
+        @Override
+        public void machineUpgrade(@Nonnull String key, @Nonnull String itemId, int progress) {
+            records.add("upgrade " + key + " " + itemId + " " + progress);
+        }
+
+        @Override
+        public void machineRemove(@Nonnull String key) {
+            records.add("remove " + key);
+        }
+
+        @Override
+        public void playerDiscover(@Nonnull UUID playerUuid, @Nonnull String itemId) {
+            records.add("player " + playerUuid + " " + itemId);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.echoexchange.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MachinePositionTest {
+
+    @Test
+    void unpacksWhatWasPacked() {
+        int[][] positions = {
+            {0, 0, 0}, {1, 64, -3}, {-1, -1, -1},
+            {(1 << 25) - 1, 2047, (1 << 25) - 1}, {-(1 << 25), -2048, -(1 << 25)}
+        };
+        for (int[] position : positions) {
+            long packed = MachinePosition.pack(position[0], position[1], position[2]);
+
+            assertEquals(position[0], MachinePosition.unpackX(packed));
+            assertEquals(position[1], MachinePosition.unpackY(packed));
+            assertEquals(position[2], MachinePosition.unpackZ(packed));
+        }
+    }
+
+    @Test
+    void neighboursPackDifferently() {
+        long origin = MachinePosition.pack(0, 0, 0);
+
+        assertNotEquals(origin, MachinePosition.pack(1, 0, 0));
+        assertNotEquals(origin, MachinePosition.pack(0, 1, 0));
+        assertNotEquals(origin, MachinePosition.pack(0, 0, 1));
+    }
+
+    @Test
+    void rejectsCoordinatesThatWouldWrap() {
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.pack(1 << 25, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.pack(-(1 << 25) - 1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.pack(0, 2048, 0));
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.pack(0, -2049, 0));
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.pack(0, 0, 1 << 25));
+    }
+
+    @Test
+    void keysRoundTrip() {
+        long packed = MachinePosition.pack(-12, 70, 345);
+        String key = MachinePosition.toKey("default", packed);
+
+        assertEquals("default:-12,70,345", key);
+        assertEquals("default", MachinePosition.parseWorld(key));
+        assertEquals(packed, MachinePosition.parsePosition(key));
+    }
+
+    @Test
+    void malformedKeysAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.parsePosition("default:1,2"));
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.parsePosition("default:a,2,3"));
+        assertThrows(IllegalArgumentException.class, () -> MachinePosition.parsePosition("default:1,99999,3"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.echoexchange.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MachineShardTest {
+
+    private static final long POSITION = MachinePosition.pack(1, 64, -3);
+
+    private final ExchangeMachineManager.MachineShard shard =
+        new ExchangeMachineManager.MachineShard("default", new File("default.json"));
+
+    @Test
+    void entryIsCreatedOnTheFirstWrite() {
+        assertNull(shard.get(POSITION));
+
+        shard.update(POSITION, data -> data.addEchoes(5));
+
+        ExchangeMachineManager.MachineData data = shard.get(POSITION);
+        assertNotNull(data);
+        assertEquals(5, data.getStoredEchoes());
+        assertEquals(1, shard.size());
+    }
+
+    @Test
+    void laterWritesReachTheSameEntry() {
+        shard.update(POSITION, data -> data.addEchoes(5));
+        ExchangeMachineManager.MachineData first = shard.get(POSITION);
+
+        shard.update(POSITION, data -> data.addEchoes(7));
+
+        assertSame(first, shard.get(POSITION));
+        assertEquals(12, first.getStoredEchoes());
+    }
+
+    @Test
+    void entryLeftEmptyIsDropped() {
+        shard.update(POSITION, data -> data.addEchoes(5));
+        shard.update(POSITION, data -> data.removeEchoes(5));
+
+        assertNull(shard.get(POSITION));
+        assertEquals(0, shard.size());
+        assertTrue(shard.toEntries().isEmpty());
+    }
+
+    @Test
+    void writeThatChangesNothingLeavesNoEntry() {
+        shard.update(POSITION, data -> data.removeEchoes(1));
+
+        assertNull(shard.get(POSITION));
+    }
+
+    @Test
+    void recreatedEntryNeverRepeatsAVersion() {
+        shard.update(POSITION, data -> data.addEchoes(5));
+        long dropped = shard.get(POSITION).getVersion();
+        shard.update(POSITION, data -> data.removeEchoes(5));
+
+        shard.update(POSITION, data -> data.addEchoes(5));
+
+        assertTrue(shard.get(POSITION).getVersion() > dropped);
+    }
+
+    @Test
+    void savedEntriesAreKeyedByWorldAndPosition() {
+        shard.update(POSITION, data -> data.addEchoes(5));
+
+        List<ExchangeMachineManager.MachineEntry> entries = shard.toEntries();
+        assertEquals(1, entries.size());
+        assertEquals("default:1,64,-3", entries.get(0).key);
+        assertEquals(5, entries.get(0).data.getStoredEchoes());
+    }
+
+    @Test
+    void emptyViewRefusesChanges() {
+        assertThrows(IllegalStateException.class, () -> ExchangeMachineManager.MachineData.EMPTY.addEchoes(1));
+        assertEquals(0, ExchangeMachineManager.MachineData.EMPTY.getStoredEchoes());
+    }
+}
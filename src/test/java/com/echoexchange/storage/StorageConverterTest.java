@@ -0,0 +1,88 @@
+package com.echoexchange.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StorageConverterTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void writeReplacesTheLiveFile() throws IOException {
+        Path file = folder.resolve("default.bin");
+        write(file, 0, "first");
+        write(file, 0, "second");
+
+        assertEquals("second", Files.readString(file));
+        assertFalse(Files.exists(folder.resolve("default.bin.tmp")));
+        assertFalse(Files.exists(folder.resolve("default.bin.1")));
+    }
+
+    @Test
+    void writeCreatesMissingFolders() throws IOException {
+        Path file = folder.resolve("machines").resolve("default.bin");
+        write(file, 2, "first");
+
+        assertEquals("first", Files.readString(file));
+    }
+
+    @Test
+    void keepsTheRequestedBackupGenerations() throws IOException {
+        Path file = folder.resolve("default.bin");
+        write(file, 2, "first");
+        assertFalse(Files.exists(folder.resolve("default.bin.1")));
+
+        write(file, 2, "second");
+        write(file, 2, "third");
+        write(file, 2, "fourth");
+
+        assertEquals("fourth", Files.readString(file));
+        assertEquals("third", Files.readString(folder.resolve("default.bin.1")));
+        assertEquals("second", Files.readString(folder.resolve("default.bin.2")));
+        assertFalse(Files.exists(folder.resolve("default.bin.3")));
+    }
+
+    @Test
+    void failedWriteLeavesTheLiveFileAlone() throws IOException {
+        Path file = folder.resolve("default.bin");
+        write(file, 2, "first");
+
+        assertThrows(IOException.class, () -> StorageConverter.writeAtomically(file.toFile(), 2, temp -> {
+            Files.writeString(temp, "partial");
+            throw new IOException("disk full");
+        }));
+
+        assertEquals("first", Files.readString(file));
+        assertFalse(Files.exists(folder.resolve("default.bin.1")));
+    }
+
+    @Test
+    void readsTheLiveFileFirst() throws IOException {
+        Path file = folder.resolve("default.bin");
+        write(file, 2, "first");
+        write(file, 2, "second");
+
+        assertEquals("second", StorageConverter.readWithBackups(file.toFile(), 2, Files::readString));
+    }
+
+    @Test
+    void readFailsWithoutBackups() {
+        Path file = folder.resolve("missing.bin");
+
+        assertThrows(IOException.class, () -> StorageConverter.readWithBackups(file.toFile(), 0, Files::readString));
+    }
+
+    private static void write(@Nonnull Path file, int generations, @Nonnull String content) throws IOException {
+        StorageConverter.writeAtomically(file.toFile(), generations, temp -> Files.writeString(temp, content));
+    }
+}
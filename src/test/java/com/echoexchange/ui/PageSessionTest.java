@@ -0,0 +1,44 @@
+package com.echoexchange.ui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageSessionTest {
+
+    private static final List<Integer> ITEMS = List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19);
+
+    @Test
+    void pageCountRoundsUpAndNeverDropsToZero() {
+        assertEquals(1, PageSession.pageCount(0, 9));
+        assertEquals(1, PageSession.pageCount(9, 9));
+        assertEquals(2, PageSession.pageCount(10, 9));
+        assertEquals(3, PageSession.pageCount(20, 9));
+    }
+
+    @Test
+    void pagesSliceTheListInOrder() {
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8), PageSession.pageOf(ITEMS, 0, 9));
+        assertEquals(List.of(9, 10, 11, 12, 13, 14, 15, 16, 17), PageSession.pageOf(ITEMS, 1, 9));
+        assertEquals(List.of(18, 19), PageSession.pageOf(ITEMS, 2, 9));
+    }
+
+    @Test
+    void pageIsClampedAfterTheListShrinks() {
+        assertEquals(2, PageSession.clampPage(2, ITEMS.size(), 9));
+        assertEquals(0, PageSession.clampPage(2, 5, 9));
+        assertEquals(0, PageSession.clampPage(-1, ITEMS.size(), 9));
+        assertEquals(2, PageSession.clampPage(7, ITEMS.size(), 9));
+    }
+
+    @Test
+    void emptyListHasOneEmptyPage() {
+        int page = PageSession.clampPage(3, 0, 9);
+
+        assertEquals(0, page);
+        assertTrue(PageSession.pageOf(List.of(), page, 9).isEmpty());
+    }
+}
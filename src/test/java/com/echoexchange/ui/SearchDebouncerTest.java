@@ -0,0 +1,83 @@
+package com.echoexchange.ui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchDebouncerTest {
+
+    // Stands in for the world thread; tasks run only when the test drains it
+    private final Queue<Runnable> worldTasks = new ArrayDeque<>();
+    private final Executor world = worldTasks::add;
+    private final List<String> updates = new ArrayList<>();
+
+    @Test
+    void burstRunsOnceWithTheLastText() {
+        SearchDebouncer debouncer = new SearchDebouncer(() -> 0);
+
+        debouncer.submit("i", world, updates::add);
+        debouncer.submit("ir", world, updates::add);
+        debouncer.submit("iron", world, updates::add);
+        drainWorld();
+
+        assertEquals(List.of("iron"), updates);
+    }
+
+    @Test
+    void nextBurstSchedulesAgain() {
+        SearchDebouncer debouncer = new SearchDebouncer(() -> 0);
+
+        debouncer.submit("iron", world, updates::add);
+        drainWorld();
+        debouncer.submit("gold", world, updates::add);
+        drainWorld();
+
+        assertEquals(List.of("iron", "gold"), updates);
+    }
+
+    @Test
+    void cancelDropsThePendingUpdateAndLaterOnes() {
+        SearchDebouncer debouncer = new SearchDebouncer(() -> 0);
+
+        debouncer.submit("iron", world, updates::add);
+        debouncer.cancel();
+        debouncer.submit("gold", world, updates::add);
+        drainWorld();
+
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    void delayedUpdateRunsAfterTheDelay() throws InterruptedException {
+        SearchDebouncer debouncer = new SearchDebouncer(() -> 20);
+        CountDownLatch flushed = new CountDownLatch(1);
+        List<String> received = new ArrayList<>();
+
+        debouncer.submit("i", Runnable::run, text -> {
+            received.add(text);
+            flushed.countDown();
+        });
+        debouncer.submit("iron", Runnable::run, text -> {
+            throw new AssertionError("only the first submit's update runs");
+        });
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("iron"), received);
+    }
+
+    private void drainWorld() {
+        Runnable task;
+        while ((task = worldTasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.echoexchange.ui;
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UiStateModelTest {
+
+    @Test
+    void buildsMessagesOnlyWhenTheSignatureChanges() {
+        UiStateModel state = new UiStateModel();
+        UICommandBuilder commands = new UICommandBuilder();
+        AtomicInteger built = new AtomicInteger();
+        Supplier<Message> tooltip = () -> {
+            built.incrementAndGet();
+            return Message.raw("tooltip");
+        };
+
+        state.set(commands, "#Slot[0].TooltipTextSpans", "Rubble_Stone|1", tooltip);
+        state.set(commands, "#Slot[0].TooltipTextSpans", "Rubble_Stone|1", tooltip);
+        assertEquals(1, built.get());
+
+        state.set(commands, "#Slot[0].TooltipTextSpans", "Rubble_Stone|2", tooltip);
+        state.set(commands, "#Slot[1].TooltipTextSpans", "Rubble_Stone|2", tooltip);
+        assertEquals(3, built.get());
+    }
+
+    @Test
+    void forgottenAndResetPropertiesAreSentAgain() {
+        UiStateModel state = new UiStateModel();
+        UICommandBuilder commands = new UICommandBuilder();
+        AtomicInteger built = new AtomicInteger();
+        Supplier<Message> tooltip = () -> {
+            built.incrementAndGet();
+            return Message.raw("tooltip");
+        };
+
+        state.set(commands, "#Grid[0].TooltipTextSpans", "a", tooltip);
+        state.set(commands, "#Upgrades[0].TooltipTextSpans", "a", tooltip);
+        state.forget("#Grid");
+        state.set(commands, "#Grid[0].TooltipTextSpans", "a", tooltip);
+        state.set(commands, "#Upgrades[0].TooltipTextSpans", "a", tooltip);
+        assertEquals(3, built.get());
+
+        state.reset();
+        state.set(commands, "#Upgrades[0].TooltipTextSpans", "a", tooltip);
+        assertEquals(4, built.get());
+    }
+}